@@ -0,0 +1,76 @@
+package com.dieam.reactnativepushnotification.benchmark;
+
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationAttributes;
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationMatcher;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Scheduled notifications are persisted as JSON, parsed back by every lookup of the store, and
+ * matched against the userInfo of cancelLocalNotifications.
+ */
+@State(Scope.Benchmark)
+public class AttributesBenchmark {
+    private String json;
+    private RNPushNotificationAttributes attributes;
+    private Map<String, Object> matchingUserInfo;
+    private Map<String, Object> missingUserInfo;
+    private RNPushNotificationMatcher matchingMatcher;
+    private RNPushNotificationMatcher missingMatcher;
+
+    @Setup
+    public void setUp() throws JSONException {
+        json = "{\"id\":\"1234567\",\"message\":\"Your order has been shipped and is on its way\","
+                + "\"fireDate\":1.6e12,\"title\":\"Order update\",\"ticker\":\"Order update\",\"autoCancel\":true,"
+                + "\"largeIcon\":\"ic_launcher\",\"smallIcon\":\"ic_notification\",\"bigText\":\"Your order #42 has been shipped\","
+                + "\"subText\":\"Orders\",\"number\":\"1\",\"sound\":\"default\",\"color\":\"#ff0000\",\"group\":\"orders\","
+                + "\"userInteraction\":false,\"playSound\":true,\"vibrate\":true,\"vibration\":300,"
+                + "\"actions\":\"[\\\"Track\\\",\\\"Dismiss\\\"]\",\"tag\":\"order-42\",\"repeatType\":\"day\","
+                + "\"repeatTime\":0,\"ongoing\":false}";
+        attributes = RNPushNotificationAttributes.fromJson(json);
+
+        matchingUserInfo = new HashMap<>();
+        matchingUserInfo.put("tag", "order-42");
+        matchingUserInfo.put("group", "orders");
+        matchingUserInfo.put("vibration", 300.0);
+        matchingUserInfo.put("ongoing", false);
+
+        missingUserInfo = new HashMap<>();
+        missingUserInfo.put("tag", "order-43");
+
+        matchingMatcher = RNPushNotificationMatcher.compile(matchingUserInfo);
+        missingMatcher = RNPushNotificationMatcher.compile(missingUserInfo);
+    }
+
+    @Benchmark
+    public RNPushNotificationAttributes fromJson() throws JSONException {
+        return RNPushNotificationAttributes.fromJson(json);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return attributes.toJson().toString();
+    }
+
+    @Benchmark
+    public RNPushNotificationMatcher compileMatcher() {
+        return RNPushNotificationMatcher.compile(matchingUserInfo);
+    }
+
+    @Benchmark
+    public boolean matchesHit() {
+        return attributes.matches(matchingMatcher);
+    }
+
+    @Benchmark
+    public boolean matchesMiss() {
+        return attributes.matches(missingMatcher);
+    }
+}
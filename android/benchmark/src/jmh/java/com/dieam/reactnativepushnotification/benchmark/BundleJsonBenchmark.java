@@ -0,0 +1,47 @@
+package com.dieam.reactnativepushnotification.benchmark;
+
+import android.os.Bundle;
+
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationBundleJson;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Every notification event reaches JS as the dataJSON string of its bundle, unless
+ * native_map_delivery is enabled.
+ */
+@State(Scope.Benchmark)
+public class BundleJsonBenchmark {
+    private Bundle bundle;
+
+    @Setup
+    public void setUp() {
+        bundle = new Bundle();
+        bundle.putString("google.message_id", "0:1590000000000000%abcdef");
+        bundle.putLong("google.sent_time", 1590000000000L);
+        bundle.putString("from", "123456789012");
+        bundle.putString("id", "1234567");
+        bundle.putString("title", "New message");
+        bundle.putString("message", "Hey, are we still on for tonight?");
+        bundle.putString("style", "inbox");
+        bundle.putString("tag", "chat-42");
+        bundle.putString("payload", "{\"type\":\"message\",\"entity\":{\"contact\":\"c1\",\"attributes\":"
+                + "{\"messageId\":\"m1\",\"rawText\":\"Hey, are we still on for tonight?\"}}}");
+        bundle.putBoolean("foreground", false);
+        bundle.putBoolean("userInteraction", false);
+
+        Bundle notification = new Bundle();
+        notification.putString("body", "Hey, are we still on for tonight?");
+        notification.putString("title", "New message");
+        bundle.putBundle("notification", notification);
+    }
+
+    @Benchmark
+    public String convertJSONObject() throws JSONException {
+        return RNPushNotificationBundleJson.toJSONObject(bundle, true).toString();
+    }
+}
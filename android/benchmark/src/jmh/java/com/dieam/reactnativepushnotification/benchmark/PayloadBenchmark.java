@@ -0,0 +1,61 @@
+package com.dieam.reactnativepushnotification.benchmark;
+
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationPayload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The payload field of chat pushes, read to store the message. Each benchmark reads every field
+ * the message sinks get, except idOnly, which only reads what deduplication needs.
+ */
+@State(Scope.Benchmark)
+public class PayloadBenchmark {
+    private String textPayload;
+    private String imagePayload;
+    private String otherPayload;
+
+    @Setup
+    public void setUp() {
+        textPayload = "{\"type\":\"message\",\"entity\":{\"contact\":\"5ef0c1d2e3f4a5b6c7d8e9f0\",\"attributes\":"
+                + "{\"messageId\":\"5ef0c1d2e3f4a5b6c7d8e9f1\",\"rawText\":\"Hey, are we still on for tonight?\"}}}";
+        imagePayload = "{\"type\":\"message\",\"entity\":{\"contact\":\"5ef0c1d2e3f4a5b6c7d8e9f0\",\"attributes\":"
+                + "{\"messageId\":\"5ef0c1d2e3f4a5b6c7d8e9f2\",\"rawText\":\"formattedMessage={\\\"type\\\":\\\"image\\\","
+                + "\\\"source\\\":\\\"https://example.com/images/5ef0c1d2.jpg\\\"}\"}}}";
+        otherPayload = "{\"type\":\"promotion\",\"entity\":{\"campaign\":\"spring\"}}";
+    }
+
+    @Benchmark
+    public void parseText(Blackhole blackhole) {
+        readMessage(RNPushNotificationPayload.of(textPayload), blackhole);
+    }
+
+    @Benchmark
+    public void parseFormatted(Blackhole blackhole) {
+        readMessage(RNPushNotificationPayload.of(imagePayload), blackhole);
+    }
+
+    @Benchmark
+    public void parseOther(Blackhole blackhole) {
+        readMessage(RNPushNotificationPayload.of(otherPayload), blackhole);
+    }
+
+    @Benchmark
+    public String idOnly() {
+        return RNPushNotificationPayload.of(imagePayload).getMessageId();
+    }
+
+    private static void readMessage(RNPushNotificationPayload payload, Blackhole blackhole) {
+        if (payload.isMessage()) {
+            blackhole.consume(payload.getMessageId());
+            blackhole.consume(payload.getContactId());
+            blackhole.consume(payload.getText());
+            blackhole.consume(payload.getImage());
+            blackhole.consume(payload.getAudio());
+            blackhole.consume(payload.getCorrect());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.dieam.reactnativepushnotification.benchmark;
+
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationRepeat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Next fire date of repeating notifications, computed each time one is shown.
+ */
+@State(Scope.Benchmark)
+public class RepeatBenchmark {
+    private static final long FIRE_DATE = 1590000000000L;
+    private static final long NOW = FIRE_DATE + 1000;
+
+    @Param({"time", "month", "week", "day", "hour", "minute"})
+    public String repeatType;
+
+    @Benchmark
+    public long nextFireDate() {
+        return RNPushNotificationRepeat.nextFireDate(repeatType, FIRE_DATE, 60000, NOW);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dieam.reactnativepushnotification.benchmark;
+
+import android.os.Bundle;
+
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationAttributes;
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationBundleCodec;
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationMatcher;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every scheduled notification is encoded when stored, and decoded by each lookup of the store,
+ * the binary form against the legacy JSON one. cancelLocalNotifications matches the stored bytes
+ * without decoding them.
+ */
+@State(Scope.Benchmark)
+public class ScheduleCodecBenchmark {
+    private RNPushNotificationAttributes attributes;
+    private byte[] bytes;
+    private String json;
+    private RNPushNotificationMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        Bundle bundle = new Bundle();
+        bundle.putString("id", "1234567");
+        bundle.putString("message", "Your order has been shipped and is on its way");
+        bundle.putDouble("fireDate", 1.6e12);
+        bundle.putString("title", "Order update");
+        bundle.putString("ticker", "Order update");
+        bundle.putBoolean("autoCancel", true);
+        bundle.putString("largeIcon", "ic_launcher");
+        bundle.putString("smallIcon", "ic_notification");
+        bundle.putString("bigText", "Your order #42 has been shipped");
+        bundle.putString("subText", "Orders");
+        bundle.putString("color", "#ff0000");
+        bundle.putString("group", "orders");
+        bundle.putBoolean("playSound", true);
+        bundle.putBoolean("vibrate", true);
+        bundle.putDouble("vibration", 300);
+        bundle.putString("actions", "[\"Track\",\"Dismiss\"]");
+        bundle.putString("tag", "order-42");
+        bundle.putString("repeatType", "day");
+        bundle.putString("priority", "high");
+        bundle.putString("visibility", "private");
+        bundle.putString("soundName", "default");
+
+        Bundle userInfo = new Bundle();
+        userInfo.putString("orderId", "42");
+        userInfo.putDouble("total", 19.99);
+        bundle.putBundle("userInfo", userInfo);
+
+        attributes = new RNPushNotificationAttributes(bundle);
+        bytes = attributes.toBytes();
+        json = attributes.toJson().toString();
+
+        Map<String, Object> matchUserInfo = new HashMap<>();
+        matchUserInfo.put("vibration", 300.0);
+        matchUserInfo.put("repeatType", "day");
+        matcher = RNPushNotificationMatcher.compile(matchUserInfo);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return attributes.toBytes();
+    }
+
+    @Benchmark
+    public RNPushNotificationAttributes decode() throws IOException {
+        return RNPushNotificationAttributes.fromBytes(bytes);
+    }
+
+    @Benchmark
+    public boolean matchDecoded() throws IOException {
+        return RNPushNotificationAttributes.fromBytes(bytes).matches(matcher);
+    }
+
+    @Benchmark
+    public boolean matchEncoded() throws IOException {
+        return RNPushNotificationBundleCodec.matches(bytes, matcher);
+    }
+
+    @Benchmark
+    public String encodeJson() {
+        return attributes.toJson().toString();
+    }
+
+    @Benchmark
+    public RNPushNotificationAttributes decodeJson() throws JSONException {
+        return RNPushNotificationAttributes.fromJson(json);
+    }
+}
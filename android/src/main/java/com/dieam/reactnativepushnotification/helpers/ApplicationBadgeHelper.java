@@ -5,9 +5,14 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
 
+import com.dieam.reactnativepushnotification.modules.RNPushNotificationMetrics;
 import com.facebook.common.logging.FLog;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import me.leolin.shortcutbadger.Badger;
 import me.leolin.shortcutbadger.ShortcutBadger;
 import me.leolin.shortcutbadger.impl.SamsungHomeBadger;
@@ -20,6 +25,9 @@ import me.leolin.shortcutbadger.impl.SamsungHomeBadger;
  * - If the first attempt fails, don't retry. This keeps logs clean, as failed attempts are noisy.
  * - Test and apply a separate method for older Samsung devices, which ShortcutBadger has
  * (perhaps over-aggressively) deprecated. ref: https://github.com/leolin310148/ShortcutBadger/issues/40
+ * - Updates are applied on a background thread, at most once per {@link #DEBOUNCE_MILLIS} with the
+ * latest count, and not at all when the count is the one applied last. Badgers go through
+ * broadcasts and content providers, which is too slow to do for every message.
  */
 public class ApplicationBadgeHelper {
 
@@ -27,20 +35,136 @@ public class ApplicationBadgeHelper {
 
     private static final String LOG_TAG = "ApplicationBadgeHelper";
     private static final Badger LEGACY_SAMSUNG_BADGER = new SamsungHomeBadger();
+    private static final long DEBOUNCE_MILLIS = 250;
 
     private Boolean applyAutomaticBadger;
     private Boolean applySamsungBadger;
     private ComponentName componentName;
 
+    private Handler handler;
+    private Context context;
+    private int pendingNumber;
+    private boolean applyScheduled;
+    private int lastAppliedNumber = -1;
+
+    private final AtomicLong requestedCount = new AtomicLong();
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    private final Runnable applyRunnable = new Runnable() {
+        public void run() {
+            applyPending();
+        }
+    };
+
     private ApplicationBadgeHelper() {
     }
 
-    public void setApplicationIconBadgeNumber(Context context, int number) {
-        if (null == componentName) {
-            componentName = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName()).getComponent();
+    /**
+     * Set the badge count. The update is applied asynchronously, coalesced with the updates that
+     * follow it within {@link #DEBOUNCE_MILLIS}.
+     */
+    public synchronized void setApplicationIconBadgeNumber(Context context, int number) {
+        requestedCount.incrementAndGet();
+        if (handler == null) {
+            this.context = context.getApplicationContext();
+            HandlerThread thread = new HandlerThread("ApplicationBadgeHelper");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+
+        pendingNumber = number;
+        if (applyScheduled) {
+            // Superseded by this update before it got applied
+            suppressedCount.incrementAndGet();
+            return;
+        }
+        applyScheduled = true;
+        handler.postDelayed(applyRunnable, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Apply the pending update now rather than once the debounce is over, for callers that need
+     * it done before they report their work finished.
+     *
+     * @param onApplied run on the badge thread once nothing is pending anymore
+     */
+    public synchronized void flush(final Runnable onApplied) {
+        if (handler == null) {
+            // Nothing was ever asked for
+            onApplied.run();
+            return;
+        }
+
+        handler.postAtFrontOfQueue(new Runnable() {
+            public void run() {
+                try {
+                    boolean scheduled;
+                    synchronized (ApplicationBadgeHelper.this) {
+                        scheduled = applyScheduled;
+                    }
+                    if (scheduled) {
+                        handler.removeCallbacks(applyRunnable);
+                        applyPending();
+                    }
+                } finally {
+                    onApplied.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return how many updates were asked for
+     */
+    public long getRequestedCount() {
+        return requestedCount.get();
+    }
+
+    /**
+     * @return how many updates reached the launcher
+     */
+    public long getAppliedCount() {
+        return appliedCount.get();
+    }
+
+    /**
+     * @return how many updates were dropped, superseded by a later one or not changing the count
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * @return the count last applied, or -1 if none was
+     */
+    public synchronized int getLastAppliedNumber() {
+        return lastAppliedNumber;
+    }
+
+    private void applyPending() {
+        int number;
+        synchronized (this) {
+            applyScheduled = false;
+            number = pendingNumber;
+            if (number == lastAppliedNumber) {
+                suppressedCount.incrementAndGet();
+                return;
+            }
+            lastAppliedNumber = number;
+        }
+
+        long start = RNPushNotificationMetrics.begin("badge");
+        try {
+            if (null == componentName) {
+                componentName = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName()).getComponent();
+            }
+            tryAutomaticBadge(context, number);
+            tryLegacySamsungBadge(context, number);
+            appliedCount.incrementAndGet();
+        } finally {
+            RNPushNotificationMetrics.end("badge", start);
         }
-        tryAutomaticBadge(context, number);
-        tryLegacySamsungBadge(context, number);
     }
 
     private void tryAutomaticBadge(Context context, int number) {
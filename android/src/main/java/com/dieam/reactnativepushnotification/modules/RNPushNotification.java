@@ -13,6 +13,7 @@ import androidx.core.app.NotificationManagerCompat;
 import com.dieam.reactnativepushnotification.helpers.ApplicationBadgeHelper;
 import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContext;
@@ -30,22 +31,32 @@ import android.util.Log;
 
 import com.google.firebase.messaging.FirebaseMessaging;
 
-public class RNPushNotification extends ReactContextBaseJavaModule implements ActivityEventListener {
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class RNPushNotification extends ReactContextBaseJavaModule implements ActivityEventListener, LifecycleEventListener {
     public static final String LOG_TAG = "RNPushNotification";// all logging should use this tag
 
     private RNPushNotificationHelper mRNPushNotificationHelper;
     private final Random mRandomNumberGenerator = new Random(System.currentTimeMillis());
     private RNPushNotificationJsDelivery mJsDelivery;
+    private RNPushNotificationForegroundTracker mForegroundTracker;
 
     public RNPushNotification(ReactApplicationContext reactContext) {
         super(reactContext);
 
         reactContext.addActivityEventListener(this);
+        reactContext.addLifecycleEventListener(this);
 
         Application applicationContext = (Application) reactContext.getApplicationContext();
 
+        // Registered as early as possible so it sees the activities start
+        mForegroundTracker = RNPushNotificationForegroundTracker.getInstance(applicationContext);
+
         // The @ReactNative methods use this
-        mRNPushNotificationHelper = new RNPushNotificationHelper(applicationContext);
+        RNPushNotificationEngine engine = RNPushNotificationEngine.getInstance(applicationContext);
+        mRNPushNotificationHelper = engine.getHelper();
+        engine.warmUpAsync();
         // This is used to delivery callbacks to JS
         mJsDelivery = new RNPushNotificationJsDelivery(reactContext);
 
@@ -82,6 +93,20 @@ public class RNPushNotification extends ReactContextBaseJavaModule implements Ac
         }
     }
 
+    @Override
+    public void onHostResume() {
+        mForegroundTracker.onHostResume();
+    }
+
+    @Override
+    public void onHostPause() {
+        // Activity lifecycle callbacks tell when the app is no longer visible
+    }
+
+    @Override
+    public void onHostDestroy() {
+    }
+
     private void registerNotificationsRegistration() {
         IntentFilter intentFilter = new IntentFilter(getReactApplicationContext().getPackageName() + ".RNPushNotificationRegisteredToken");
 
@@ -146,6 +171,20 @@ public class RNPushNotification extends ReactContextBaseJavaModule implements Ac
         FirebaseMessaging.getInstance().subscribeToTopic(topic);
     }
 
+    /**
+     * Declare a notification channel, {id, name, description, importance, vibrate, lights}, that
+     * notifications pick with their channelId. Only id is required.
+     */
+    @ReactMethod
+    public void createNotificationChannel(ReadableMap details) {
+        try {
+            RNPushNotificationChannels.Channel channel = RNPushNotificationChannels.Channel.fromJson(new JSONObject(details.toHashMap()));
+            RNPushNotificationChannels.getInstance(getReactApplicationContext()).declare(channel);
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Not creating notification channel without an id: " + details, e);
+        }
+    }
+
     @ReactMethod
     public void presentLocalNotification(ReadableMap details) {
         Bundle bundle = Arguments.toBundle(details);
@@ -174,13 +213,138 @@ public class RNPushNotification extends ReactContextBaseJavaModule implements Ac
             Bundle bundle = this.getBundleFromIntent(activity.getIntent());
             if (bundle != null) {
                 bundle.putBoolean("foreground", false);
-                String bundleString = mJsDelivery.convertJSON(bundle);
-                params.putString("dataJSON", bundleString);
+                params = mJsDelivery.toEventParams(bundle);
             }
         }
         promise.resolve(params);
     }
 
+    /**
+     * Deliver the events received while the React instance was not active. JS calls this once
+     * its listeners are registered.
+     */
+    @ReactMethod
+    public void replayPendingEvents() {
+        mJsDelivery.replayPendingEvents();
+    }
+
+    /**
+     * Timings of each pipeline stage, and the counters of the components behind them.
+     */
+    @ReactMethod
+    public void getPipelineMetrics(Promise promise) {
+        ReactContext reactContext = getReactApplicationContext();
+        WritableMap metrics = Arguments.createMap();
+        metrics.putMap("stages", Arguments.fromBundle(RNPushNotificationMetrics.snapshot()));
+
+        // Components nothing has used yet are left out, rather than started to read their counters
+        RNPushNotificationPipeline pipeline = RNPushNotificationPipeline.peekInstance();
+        if (pipeline != null) {
+            WritableMap pipelineMetrics = Arguments.createMap();
+            pipelineMetrics.putInt("capacity", pipeline.getCapacity());
+            pipelineMetrics.putInt("depth", pipeline.getDepth());
+            pipelineMetrics.putInt("maxDepth", pipeline.getMaxDepth());
+            pipelineMetrics.putDouble("submitted", pipeline.getSubmittedCount());
+            pipelineMetrics.putDouble("completed", pipeline.getCompletedCount());
+            pipelineMetrics.putDouble("overflowed", pipeline.getOverflowCount());
+            pipelineMetrics.putDouble("dropped", pipeline.getDroppedCount());
+            metrics.putMap("pipeline", pipelineMetrics);
+        }
+
+        RNPushNotificationCoalescer coalescer = RNPushNotificationCoalescer.peekInstance();
+        if (coalescer != null) {
+            WritableMap coalescerMetrics = Arguments.createMap();
+            coalescerMetrics.putDouble("coalesced", coalescer.getCoalescedCount());
+            metrics.putMap("coalescer", coalescerMetrics);
+        }
+
+        RNPushNotificationWatermelonWriter writer = RNPushNotificationWatermelonWriter.peekInstance();
+        if (writer != null) {
+            WritableMap writerMetrics = Arguments.createMap();
+            writerMetrics.putDouble("batches", writer.getBatchCount());
+            writerMetrics.putDouble("messages", writer.getMessageCount());
+            writerMetrics.putInt("lastBatchSize", writer.getLastBatchSize());
+            writerMetrics.putDouble("lastBatchCommitMillis", writer.getLastBatchCommitMillis());
+            writerMetrics.putDouble("maxBatchCommitMillis", writer.getMaxBatchCommitMillis());
+            metrics.putMap("watermelonWriter", writerMetrics);
+        }
+
+        RNPushNotificationMessageDispatcher dispatcher = RNPushNotificationMessageDispatcher.peekInstance();
+        if (dispatcher != null) {
+            WritableMap sinkMetrics = Arguments.createMap();
+            sinkMetrics.putInt("sinks", dispatcher.getSinkCount());
+            sinkMetrics.putDouble("batches", dispatcher.getBatchCount());
+            sinkMetrics.putDouble("messages", dispatcher.getMessageCount());
+            sinkMetrics.putDouble("failed", dispatcher.getFailedCount());
+            sinkMetrics.putDouble("lastFlushMillis", dispatcher.getLastFlushMillis());
+            sinkMetrics.putDouble("maxFlushMillis", dispatcher.getMaxFlushMillis());
+            metrics.putMap("messageSinks", sinkMetrics);
+        }
+
+        RNPushNotificationChannels channels = RNPushNotificationChannels.peekInstance();
+        if (channels != null) {
+            WritableMap channelMetrics = Arguments.createMap();
+            channelMetrics.putInt("declared", channels.getDeclaredCount());
+            channelMetrics.putInt("created", channels.getCreatedCount());
+            channelMetrics.putDouble("systemCalls", channels.getSystemCallCount());
+            channelMetrics.putDouble("fallbacks", channels.getFallbackCount());
+            metrics.putMap("channels", channelMetrics);
+        }
+
+        RNPushNotificationDedupe dedupe = RNPushNotificationDedupe.peekInstance();
+        if (dedupe != null) {
+            WritableMap dedupeMetrics = Arguments.createMap();
+            dedupeMetrics.putInt("capacity", dedupe.getCapacity());
+            dedupeMetrics.putInt("size", dedupe.getSize());
+            dedupeMetrics.putDouble("checked", dedupe.getCheckedCount());
+            dedupeMetrics.putDouble("duplicates", dedupe.getDuplicateCount());
+            dedupeMetrics.putDouble("hitRate", dedupe.getHitRate());
+            metrics.putMap("dedupe", dedupeMetrics);
+        }
+
+        RNPushNotificationDeferredWork deferredWork = RNPushNotificationDeferredWork.peekInstance();
+        if (deferredWork != null) {
+            WritableMap deferralMetrics = Arguments.createMap();
+            deferralMetrics.putInt("budgetMillis", deferredWork.getBudget());
+            deferralMetrics.putInt("depth", deferredWork.getDepth());
+            deferralMetrics.putDouble("pushes", deferredWork.getTaskCount());
+            deferralMetrics.putDouble("deferred", deferredWork.getDeferredCount());
+            deferralMetrics.putDouble("deferralRate", deferredWork.getDeferralRate());
+            deferralMetrics.putDouble("dropped", deferredWork.getDroppedCount());
+            deferralMetrics.putDouble("replayed", deferredWork.getReplayedCount());
+            metrics.putMap("deferral", deferralMetrics);
+        }
+
+        ApplicationBadgeHelper badge = ApplicationBadgeHelper.INSTANCE;
+        WritableMap badgeMetrics = Arguments.createMap();
+        badgeMetrics.putDouble("requested", badge.getRequestedCount());
+        badgeMetrics.putDouble("applied", badge.getAppliedCount());
+        badgeMetrics.putDouble("suppressed", badge.getSuppressedCount());
+        badgeMetrics.putInt("lastApplied", badge.getLastAppliedNumber());
+        metrics.putMap("badge", badgeMetrics);
+
+        RNPushNotificationPendingEvents pendingEvents = RNPushNotificationPendingEvents.peekInstance();
+        if (pendingEvents != null) {
+            WritableMap pendingEventsMetrics = Arguments.createMap();
+            pendingEventsMetrics.putInt("depth", pendingEvents.getDepth());
+            pendingEventsMetrics.putDouble("queued", pendingEvents.getQueuedCount());
+            pendingEventsMetrics.putDouble("dropped", pendingEvents.getDroppedCount());
+            pendingEventsMetrics.putDouble("replayed", pendingEvents.getReplayedCount());
+            metrics.putMap("pendingEvents", pendingEventsMetrics);
+        }
+
+        WritableMap foregroundMetrics = Arguments.createMap();
+        foregroundMetrics.putBoolean("foreground", mForegroundTracker.isForeground());
+        foregroundMetrics.putDouble("transitions", mForegroundTracker.getTransitionCount());
+        metrics.putMap("foreground", foregroundMetrics);
+
+        WritableMap engineMetrics = Arguments.createMap();
+        engineMetrics.putDouble("warmUpMillis", RNPushNotificationEngine.getInstance(reactContext).getWarmUpMillis());
+        metrics.putMap("engine", engineMetrics);
+
+        promise.resolve(metrics);
+    }
+
     @ReactMethod
     public void setApplicationIconBadgeNumber(int number) {
         ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(getReactApplicationContext(), number);
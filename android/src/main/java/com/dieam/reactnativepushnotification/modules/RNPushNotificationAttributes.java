@@ -4,15 +4,25 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
-import com.facebook.react.bridge.ReadableMap;
-import com.facebook.react.bridge.ReadableMapKeySetIterator;
-
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+import java.io.IOException;
+import java.util.Map;
 
+/**
+ * A scheduled notification, as persisted by {@link RNPushNotificationScheduleStore}.
+ * <p>
+ * The fields below are what the library itself reads, the rest of the bundle it was scheduled
+ * with, such as priority, visibility, style, payload and custom keys, is carried along so the
+ * notification fires with all of it. Only {@link #toBytes()} keeps those, the JSON form is the
+ * legacy one, read to migrate older entries.
+ */
 public class RNPushNotificationAttributes {
+    // Same as RNPushNotification.LOG_TAG, not referenced so this class builds without React in
+    // the benchmarks under android/benchmark
+    private static final String LOG_TAG = "RNPushNotification";
+
     private static final String ID = "id";
     private static final String MESSAGE = "message";
     private static final String FIRE_DATE = "fireDate";
@@ -60,31 +70,63 @@ public class RNPushNotificationAttributes {
     private final String repeatType;
     private final double repeatTime;
     private final boolean ongoing;
+    // Everything the notification was scheduled with, the fields above included
+    private final Bundle bundle;
 
     public RNPushNotificationAttributes(Bundle bundle) {
+        this(bundle, false);
+    }
+
+    /**
+     * Missing fields read with the same defaults as the JSON form, but are left missing in the
+     * bundle, as the helper has defaults of its own for them. Only a number given as a number
+     * rather than a string is rewritten, as the helper reads it as a string.
+     *
+     * @param canonical the bundle already holds the fields as they are read, as for one decoded
+     *                  from {@link #toBytes()}, so it can be kept as is rather than copied
+     */
+    private RNPushNotificationAttributes(Bundle bundle, boolean canonical) {
         id = bundle.getString(ID);
         message = bundle.getString(MESSAGE);
         fireDate = bundle.getDouble(FIRE_DATE);
         title = bundle.getString(TITLE);
         ticker = bundle.getString(TICKER);
-        autoCancel = bundle.getBoolean(AUTO_CANCEL);
+        autoCancel = bundle.getBoolean(AUTO_CANCEL, true);
         largeIcon = bundle.getString(LARGE_ICON);
         smallIcon = bundle.getString(SMALL_ICON);
         bigText = bundle.getString(BIG_TEXT);
         subText = bundle.getString(SUB_TEXT);
-        number = bundle.getString(NUMBER);
+        number = getNumber(bundle);
         sound = bundle.getString(SOUND);
         color = bundle.getString(COLOR);
         group = bundle.getString(GROUP);
         userInteraction = bundle.getBoolean(USER_INTERACTION);
-        playSound = bundle.getBoolean(PLAY_SOUND);
-        vibrate = bundle.getBoolean(VIBRATE);
-        vibration = bundle.getDouble(VIBRATION);
+        playSound = bundle.getBoolean(PLAY_SOUND, true);
+        vibrate = bundle.getBoolean(VIBRATE, true);
+        vibration = bundle.getDouble(VIBRATION, 1000);
         actions = bundle.getString(ACTIONS);
         tag = bundle.getString(TAG);
         repeatType = bundle.getString(REPEAT_TYPE);
         repeatTime = bundle.getDouble(REPEAT_TIME);
         ongoing = bundle.getBoolean(ONGOING);
+
+        if (canonical) {
+            this.bundle = bundle;
+        } else {
+            this.bundle = new Bundle(bundle);
+            if (number != null) {
+                this.bundle.putString(NUMBER, number);
+            }
+        }
+    }
+
+    private static String getNumber(Bundle bundle) {
+        Object value = bundle.get(NUMBER);
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            return number == Math.rint(number) ? Long.toString((long) number) : value.toString();
+        }
+        return value != null ? value.toString() : null;
     }
 
     private RNPushNotificationAttributes(JSONObject jsonObject) {
@@ -115,6 +157,9 @@ public class RNPushNotificationAttributes {
         } catch (JSONException e) {
             throw new IllegalStateException("Exception while initializing RNPushNotificationAttributes from JSON", e);
         }
+
+        bundle = new Bundle();
+        putFields(bundle);
     }
 
     @NonNull
@@ -123,56 +168,45 @@ public class RNPushNotificationAttributes {
         return new RNPushNotificationAttributes(jsonObject);
     }
 
+    /**
+     * @param bytes as returned by {@link #toBytes()}
+     * @throws IOException if the bytes cannot be decoded
+     */
+    @NonNull
+    public static RNPushNotificationAttributes fromBytes(byte[] bytes) throws IOException {
+        return new RNPushNotificationAttributes(RNPushNotificationBundleCodec.decode(bytes), true);
+    }
+
+    /**
+     * @return the full bundle, typed values included, see {@link RNPushNotificationBundleCodec}
+     */
+    public byte[] toBytes() {
+        return RNPushNotificationBundleCodec.encode(bundle);
+    }
+
     /**
      * User to find notifications:
      * <p>
      *
-     * @param userInfo map of fields to match
+     * @param userInfo map of fields to match, as given by ReadableMap.toHashMap()
      * @return true all fields in userInfo object match, false otherwise
      */
-    public boolean matches(ReadableMap userInfo) {
-        Bundle bundle = toBundle();
-
-        ReadableMapKeySetIterator iterator = userInfo.keySetIterator();
-        while (iterator.hasNextKey()) {
-            String key = iterator.nextKey();
-
-            if (!bundle.containsKey(key))
-                return false;
-
-            switch (userInfo.getType(key)) {
-                case Null: {
-                    if (bundle.get(key) != null)
-                        return false;
-                    break;
-                }
-                case Boolean: {
-                    if (userInfo.getBoolean(key) != bundle.getBoolean(key))
-                        return false;
-                    break;
-                }
-                case Number: {
-                    if ((userInfo.getDouble(key) != bundle.getDouble(key)) && (userInfo.getInt(key) != bundle.getInt(key)))
-                        return false;
-                    break;
-                }
-                case String: {
-                    if (!userInfo.getString(key).equals(bundle.getString(key)))
-                        return false;
-                    break;
-                }
-                case Map:
-                    return false;//there are no maps in the bundle
-                case Array:
-                    return false;//there are no arrays in the bundle
-            }
-        }
+    public boolean matches(Map<String, Object> userInfo) {
+        return matches(RNPushNotificationMatcher.compile(userInfo));
+    }
 
-        return true;
+    /**
+     * Same as {@link #matches(Map)}, for checking many notifications against the same userInfo.
+     */
+    public boolean matches(RNPushNotificationMatcher matcher) {
+        return matcher.matches(bundle);
     }
 
     public Bundle toBundle() {
-        Bundle bundle = new Bundle();
+        return new Bundle(bundle);
+    }
+
+    private void putFields(Bundle bundle) {
         bundle.putString(ID, id);
         bundle.putString(MESSAGE, message);
         bundle.putDouble(FIRE_DATE, fireDate);
@@ -196,7 +230,6 @@ public class RNPushNotificationAttributes {
         bundle.putString(REPEAT_TYPE, repeatType);
         bundle.putDouble(REPEAT_TIME, repeatTime);
         bundle.putBoolean(ONGOING, ongoing);
-        return bundle;
     }
 
     public JSONObject toJson() {
@@ -267,8 +300,20 @@ public class RNPushNotificationAttributes {
         return id;
     }
 
+    public String getMessage() {
+        return message;
+    }
+
     public double getFireDate() {
         return fireDate;
     }
 
+    public String getTag() {
+        return tag;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
 }
@@ -4,49 +4,113 @@ import android.app.Application;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
 
 /**
- * Set alarms for scheduled notification after system reboot.
+ * Set alarms for scheduled notification after system reboot, and after the app got updated
+ * (which clears its alarms too).
+ * <p>
+ * The store is processed in pages on the pipeline thread. Notifications that were missed while
+ * the device was off are collapsed into a single summary notification.
  */
 public class RNPushNotificationBootEventReceiver extends BroadcastReceiver {
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_SUMMARY_LINES = 5;
 
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.i(LOG_TAG, "RNPushNotificationBootEventReceiver loading scheduled notifications");
 
-        if (intent.getAction().equals("android.intent.action.BOOT_COMPLETED")) {
-            SharedPreferences sharedPreferences = context.getSharedPreferences(RNPushNotificationHelper.PREFERENCES_KEY, Context.MODE_PRIVATE);
-            Set<String> ids = sharedPreferences.getAll().keySet();
-
-            Application applicationContext = (Application) context.getApplicationContext();
-            RNPushNotificationHelper rnPushNotificationHelper = new RNPushNotificationHelper(applicationContext);
+        String action = intent.getAction();
+        if (!"android.intent.action.BOOT_COMPLETED".equals(action) && !"android.intent.action.MY_PACKAGE_REPLACED".equals(action)) {
+            return;
+        }
 
-            for (String id : ids) {
+        final Application applicationContext = (Application) context.getApplicationContext();
+        // Queued even past the pipeline's limit, as the main thread's work always is
+        final PendingResult pendingResult = goAsync();
+        RNPushNotificationPipeline.getInstance(applicationContext).post(new Runnable() {
+            public void run() {
                 try {
-                    String notificationAttributesJson = sharedPreferences.getString(id, null);
-                    if (notificationAttributesJson != null) {
-                        RNPushNotificationAttributes notificationAttributes = RNPushNotificationAttributes.fromJson(notificationAttributesJson);
+                    reschedule(applicationContext);
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        });
+    }
 
-                        if (notificationAttributes.getFireDate() < System.currentTimeMillis()) {
-                            Log.i(LOG_TAG, "RNPushNotificationBootEventReceiver: Showing notification for " +
-                                    notificationAttributes.getId());
-                            rnPushNotificationHelper.sendToNotificationCentre(notificationAttributes.toBundle());
+    private void reschedule(Application applicationContext) {
+        long start = SystemClock.elapsedRealtime();
+        long now = System.currentTimeMillis();
+
+        RNPushNotificationScheduleStore store = RNPushNotificationScheduleStore.getInstance(applicationContext);
+        RNPushNotificationHelper rnPushNotificationHelper = RNPushNotificationEngine.getInstance(applicationContext).getHelper();
+
+        RNPushNotificationAttributes firstMissed = null;
+        int missedCount = 0;
+        List<String> missedLines = new ArrayList<>();
+
+        rnPushNotificationHelper.setRearmDeferred(true);
+        try {
+            long afterFireDate = Long.MIN_VALUE;
+            String afterId = "";
+            RNPushNotificationScheduleStore.Page page;
+            do {
+                page = store.getPage(afterFireDate, afterId, PAGE_SIZE);
+                afterFireDate = page.getLastFireDate();
+                afterId = page.getLastId();
+                for (RNPushNotificationAttributes notificationAttributes : page.getEntries()) {
+                    try {
+                        if (notificationAttributes.getFireDate() < now) {
+                            missedCount++;
+                            if (missedCount == 1) {
+                                // Shown as is if it turns out to be the only one
+                                firstMissed = notificationAttributes;
+                                continue;
+                            }
+                            if (missedCount == 2) {
+                                dismissMissed(rnPushNotificationHelper, firstMissed, missedLines);
+                            }
+                            dismissMissed(rnPushNotificationHelper, notificationAttributes, missedLines);
                         } else {
                             Log.i(LOG_TAG, "RNPushNotificationBootEventReceiver: Scheduling notification for " +
                                     notificationAttributes.getId());
                             rnPushNotificationHelper.sendNotificationScheduledCore(notificationAttributes.toBundle());
                         }
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "Problem with boot receiver loading notification " + notificationAttributes.getId(), e);
                     }
-                } catch (Exception e) {
-                    Log.e(LOG_TAG, "Problem with boot receiver loading notification " + id, e);
                 }
+            } while (page.getRowCount() == PAGE_SIZE);
+
+            if (missedCount == 1) {
+                Log.i(LOG_TAG, "RNPushNotificationBootEventReceiver: Showing notification for " + firstMissed.getId());
+                rnPushNotificationHelper.sendToNotificationCentre(firstMissed.toBundle());
+            } else if (missedCount > 1) {
+                Log.i(LOG_TAG, "RNPushNotificationBootEventReceiver: Showing summary for " + missedCount + " missed notifications");
+                rnPushNotificationHelper.sendMissedNotificationsSummary(missedCount, missedLines);
             }
+        } finally {
+            rnPushNotificationHelper.setRearmDeferred(false);
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        RNPushNotificationMetrics.recordTime("bootReschedule", elapsed);
+        Log.i(LOG_TAG, "RNPushNotificationBootEventReceiver: Done in " + elapsed + " ms, " + missedCount + " missed");
+    }
+
+    private void dismissMissed(RNPushNotificationHelper rnPushNotificationHelper, RNPushNotificationAttributes notificationAttributes, List<String> missedLines) {
+        Log.i(LOG_TAG, "RNPushNotificationBootEventReceiver: Collapsing missed notification " + notificationAttributes.getId());
+        if (missedLines.size() < MAX_SUMMARY_LINES) {
+            missedLines.add(notificationAttributes.getMessage());
         }
+        rnPushNotificationHelper.dismissMissedNotification(notificationAttributes.toBundle());
     }
 }
@@ -0,0 +1,544 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary encoding of a Bundle, as persisted for scheduled notifications.
+ * <p>
+ * Values keep their type, which JSON cannot tell for numbers, and nested bundles and lists are
+ * supported, which covers everything Arguments.toBundle produces. Lengths, integers and doubles
+ * holding whole numbers, such as dates, are varints, and known keys take a single byte, so short
+ * notifications take little more than their text.
+ * <p>
+ * Only depends on Bundle, so the benchmarks in android/benchmark can run it on a plain JVM.
+ */
+public class RNPushNotificationBundleCodec {
+    // Same as RNPushNotification.LOG_TAG, not referenced so this class builds without React in
+    // the benchmarks under android/benchmark
+    private static final String LOG_TAG = "RNPushNotification";
+
+    static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_FALSE = 3;
+    private static final int TYPE_INT = 4;
+    private static final int TYPE_LONG = 5;
+    private static final int TYPE_DOUBLE = 6;
+    private static final int TYPE_BUNDLE = 7;
+    private static final int TYPE_LIST = 8;
+    private static final int TYPE_WHOLE_DOUBLE = 9;
+
+    // A key is written as its index in KEYS plus KEY_FIRST_KNOWN, or as KEY_LITERAL followed by
+    // the string. Part of the format, so only ever append to it, and bump VERSION otherwise.
+    private static final int KEY_END = 0;
+    private static final int KEY_LITERAL = 1;
+    private static final int KEY_FIRST_KNOWN = 2;
+    private static final String[] KEYS = {
+            "id", "message", "fireDate", "title", "ticker", "autoCancel", "largeIcon", "smallIcon",
+            "bigText", "subText", "number", "sound", "color", "group", "userInteraction", "playSound",
+            "vibrate", "vibration", "actions", "tag", "repeatType", "repeatTime", "ongoing",
+            "soundName", "priority", "visibility", "importance", "style", "payload", "incrementBadge",
+            "badge", "bigPicture", "summaryText", "userInfo", "data", "foreground",
+    };
+    private static final Map<String, Integer> KEY_CODES = new HashMap<>();
+
+    // Doubles within this range hold whole numbers exactly
+    private static final double MAX_WHOLE_DOUBLE = 1L << 53;
+
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEY_CODES.put(KEYS[i], KEY_FIRST_KNOWN + i);
+        }
+    }
+
+    private RNPushNotificationBundleCodec() {
+    }
+
+    /**
+     * Values of other types than null, String, Boolean, Integer, Long, Double, Bundle and List
+     * are left out, with a warning.
+     */
+    public static byte[] encode(Bundle bundle) {
+        Writer writer = new Writer();
+        writer.writeByte(VERSION);
+        writeBundle(writer, bundle);
+        return writer.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the bytes are truncated, or written by an unknown version
+     */
+    public static Bundle decode(byte[] bytes) throws IOException {
+        Reader reader = new Reader(bytes);
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown bundle encoding version " + version);
+        }
+        return readBundle(reader);
+    }
+
+    /**
+     * Same as {@code matcher.matches(decode(bytes))}, comparing the fields in place rather than
+     * decoding the bundle, so checking a stored notification allocates next to nothing.
+     *
+     * @throws IOException if the bytes are truncated, or written by an unknown version
+     */
+    public static boolean matches(byte[] bytes, RNPushNotificationMatcher matcher) throws IOException {
+        Reader reader = new Reader(bytes);
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown bundle encoding version " + version);
+        }
+
+        // Keys are unique on both sides, so counting the matched ones tells whether all are there
+        int matched = 0;
+        int code;
+        while ((code = reader.readVarint()) != KEY_END) {
+            int index;
+            if (code == KEY_LITERAL) {
+                index = reader.readKeyIndex(matcher);
+            } else if (code - KEY_FIRST_KNOWN < KEYS.length) {
+                index = matcher.indexOf(KEYS[code - KEY_FIRST_KNOWN]);
+            } else {
+                throw new IOException("Unknown key " + code);
+            }
+
+            int type = reader.readByte();
+            if (index < 0) {
+                skipValue(reader, type);
+            } else if (matchesValue(reader, type, matcher, index)) {
+                matched++;
+            } else {
+                return false;
+            }
+        }
+        return matched == matcher.size();
+    }
+
+    private static boolean matchesValue(Reader reader, int type, RNPushNotificationMatcher matcher, int index)
+            throws IOException {
+        switch (matcher.getKind(index)) {
+            case RNPushNotificationMatcher.KIND_NULL:
+                return type == TYPE_NULL;
+            case RNPushNotificationMatcher.KIND_NUMBER:
+                double number;
+                switch (type) {
+                    case TYPE_INT:
+                        number = (int) reader.readSignedVarint();
+                        break;
+                    case TYPE_LONG:
+                    case TYPE_WHOLE_DOUBLE:
+                        number = reader.readSignedVarint();
+                        break;
+                    case TYPE_DOUBLE:
+                        number = Double.longBitsToDouble(reader.readLong());
+                        break;
+                    default:
+                        return false;
+                }
+                return number == matcher.getNumber(index);
+            case RNPushNotificationMatcher.KIND_EQUAL:
+                Object expected = matcher.getValue(index);
+                if (expected instanceof Boolean) {
+                    return type == ((Boolean) expected ? TYPE_TRUE : TYPE_FALSE);
+                }
+                return type == TYPE_STRING && reader.readStringEquals((String) expected);
+            default:
+                return false;
+        }
+    }
+
+    private static void skipValue(Reader reader, int type) throws IOException {
+        switch (type) {
+            case TYPE_NULL:
+            case TYPE_TRUE:
+            case TYPE_FALSE:
+                break;
+            case TYPE_STRING:
+                reader.skip(reader.readVarint());
+                break;
+            case TYPE_INT:
+            case TYPE_LONG:
+            case TYPE_WHOLE_DOUBLE:
+                reader.readSignedVarint();
+                break;
+            case TYPE_DOUBLE:
+                reader.skip(8);
+                break;
+            case TYPE_BUNDLE:
+                int code;
+                while ((code = reader.readVarint()) != KEY_END) {
+                    if (code == KEY_LITERAL) {
+                        reader.skip(reader.readVarint());
+                    } else if (code - KEY_FIRST_KNOWN >= KEYS.length) {
+                        throw new IOException("Unknown key " + code);
+                    }
+                    skipValue(reader, reader.readByte());
+                }
+                break;
+            case TYPE_LIST:
+                for (int i = reader.readVarint(); i > 0; i--) {
+                    skipValue(reader, reader.readByte());
+                }
+                break;
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private static void writeBundle(Writer writer, Bundle bundle) {
+        for (String key : bundle.keySet()) {
+            Object value = bundle.get(key);
+            if (!isSupported(value)) {
+                Log.w(LOG_TAG, "Not persisting " + key + ", values of " + value.getClass() + " are not supported");
+                continue;
+            }
+
+            Integer code = KEY_CODES.get(key);
+            if (code != null) {
+                writer.writeVarint(code);
+            } else {
+                writer.writeVarint(KEY_LITERAL);
+                writer.writeString(key);
+            }
+            writeValue(writer, value);
+        }
+        writer.writeVarint(KEY_END);
+    }
+
+    private static boolean isSupported(Object value) {
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (!isSupported(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value == null || value instanceof String || value instanceof Boolean || value instanceof Integer
+                || value instanceof Long || value instanceof Double || value instanceof Bundle;
+    }
+
+    private static void writeValue(Writer writer, Object value) {
+        if (value == null) {
+            writer.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            writer.writeByte(TYPE_STRING);
+            writer.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            writer.writeByte((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Integer) {
+            writer.writeByte(TYPE_INT);
+            writer.writeSignedVarint((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeByte(TYPE_LONG);
+            writer.writeSignedVarint((Long) value);
+        } else if (value instanceof Double) {
+            double number = (Double) value;
+            if (number == Math.rint(number) && Math.abs(number) <= MAX_WHOLE_DOUBLE
+                    && Double.doubleToRawLongBits(number) != Double.doubleToRawLongBits(-0.0)) {
+                writer.writeByte(TYPE_WHOLE_DOUBLE);
+                writer.writeSignedVarint((long) number);
+            } else {
+                writer.writeByte(TYPE_DOUBLE);
+                writer.writeLong(Double.doubleToRawLongBits(number));
+            }
+        } else if (value instanceof Bundle) {
+            writer.writeByte(TYPE_BUNDLE);
+            writeBundle(writer, (Bundle) value);
+        } else {
+            List<?> list = (List<?>) value;
+            writer.writeByte(TYPE_LIST);
+            writer.writeVarint(list.size());
+            for (Object item : list) {
+                writeValue(writer, item);
+            }
+        }
+    }
+
+    private static Bundle readBundle(Reader reader) throws IOException {
+        Bundle bundle = new Bundle();
+        int code;
+        while ((code = reader.readVarint()) != KEY_END) {
+            String key;
+            if (code == KEY_LITERAL) {
+                key = reader.readString();
+            } else if (code - KEY_FIRST_KNOWN < KEYS.length) {
+                key = KEYS[code - KEY_FIRST_KNOWN];
+            } else {
+                throw new IOException("Unknown key " + code);
+            }
+
+            int type = reader.readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    bundle.putString(key, null);
+                    break;
+                case TYPE_STRING:
+                    bundle.putString(key, reader.readString());
+                    break;
+                case TYPE_TRUE:
+                case TYPE_FALSE:
+                    bundle.putBoolean(key, type == TYPE_TRUE);
+                    break;
+                case TYPE_INT:
+                    bundle.putInt(key, (int) reader.readSignedVarint());
+                    break;
+                case TYPE_LONG:
+                    bundle.putLong(key, reader.readSignedVarint());
+                    break;
+                case TYPE_DOUBLE:
+                    bundle.putDouble(key, Double.longBitsToDouble(reader.readLong()));
+                    break;
+                case TYPE_WHOLE_DOUBLE:
+                    bundle.putDouble(key, (double) reader.readSignedVarint());
+                    break;
+                case TYPE_BUNDLE:
+                    bundle.putBundle(key, readBundle(reader));
+                    break;
+                case TYPE_LIST:
+                    bundle.putSerializable(key, readList(reader));
+                    break;
+                default:
+                    throw new IOException("Unknown value type " + type + " for " + key);
+            }
+        }
+        return bundle;
+    }
+
+    private static ArrayList<Object> readList(Reader reader) throws IOException {
+        int size = reader.readVarint();
+        ArrayList<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int type = reader.readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    list.add(null);
+                    break;
+                case TYPE_STRING:
+                    list.add(reader.readString());
+                    break;
+                case TYPE_TRUE:
+                case TYPE_FALSE:
+                    list.add(type == TYPE_TRUE);
+                    break;
+                case TYPE_INT:
+                    list.add((int) reader.readSignedVarint());
+                    break;
+                case TYPE_LONG:
+                    list.add(reader.readSignedVarint());
+                    break;
+                case TYPE_DOUBLE:
+                    list.add(Double.longBitsToDouble(reader.readLong()));
+                    break;
+                case TYPE_WHOLE_DOUBLE:
+                    list.add((double) reader.readSignedVarint());
+                    break;
+                case TYPE_BUNDLE:
+                    list.add(readBundle(reader));
+                    break;
+                case TYPE_LIST:
+                    list.add(readList(reader));
+                    break;
+                default:
+                    throw new IOException("Unknown value type " + type + " in a list");
+            }
+        }
+        return list;
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[256];
+        private int position;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeSignedVarint(long value) {
+            // Zigzag, so small negative numbers stay short too
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            int length = value.length();
+            if (isAscii(value, length)) {
+                // Most keys and values, copied without going through an encoder
+                writeVarint(length);
+                ensureCapacity(length);
+                for (int i = 0; i < length; i++) {
+                    buffer[position++] = (byte) value.charAt(i);
+                }
+                return;
+            }
+
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private static boolean isAscii(String value, int length) {
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return buffer[position++] & 0xFF;
+        }
+
+        int readVarint() throws IOException {
+            long value = readVarintLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Length out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        long readSignedVarint() throws IOException {
+            long value = readVarintLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readLong() throws IOException {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            require(length);
+            String value = new String(buffer, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skip(int length) throws IOException {
+            require(length);
+            position += length;
+        }
+
+        /**
+         * Read a string and compare it to the expected one, without decoding it if that is ASCII.
+         */
+        boolean readStringEquals(String expected) throws IOException {
+            int length = readVarint();
+            require(length);
+            boolean equal = regionEquals(length, expected);
+            position += length;
+            return equal;
+        }
+
+        /**
+         * Read a literal key.
+         *
+         * @return its index in the matcher, -1 if it is not matched
+         */
+        int readKeyIndex(RNPushNotificationMatcher matcher) throws IOException {
+            int length = readVarint();
+            require(length);
+            int index = -1;
+            for (int i = 0; i < matcher.size() && index < 0; i++) {
+                if (regionEquals(length, matcher.getKey(i))) {
+                    index = i;
+                }
+            }
+            position += length;
+            return index;
+        }
+
+        private boolean regionEquals(int length, String expected) {
+            int chars = expected.length();
+            if (!Writer.isAscii(expected, chars)) {
+                return new String(buffer, position, length, UTF_8).equals(expected);
+            }
+            // Bytes of other characters are all outside ASCII, so only an identical run matches
+            if (length != chars) {
+                return false;
+            }
+            for (int i = 0; i < chars; i++) {
+                if (buffer[position + i] != (byte) expected.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long readVarintLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private void require(int length) throws IOException {
+            if (length > buffer.length - position) {
+                throw new IOException("Truncated bundle encoding");
+            }
+        }
+    }
+}
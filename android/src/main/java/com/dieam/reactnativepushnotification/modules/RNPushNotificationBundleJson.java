@@ -0,0 +1,38 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.os.Bundle;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Bundle to JSON conversion of the dataJSON event payload.
+ * <p>
+ * Free of React and of android.os.Build, so the benchmarks in android/benchmark can run it on a
+ * plain JVM.
+ */
+public class RNPushNotificationBundleJson {
+    private RNPushNotificationBundleJson() {
+    }
+
+    /**
+     * A Bundle is not a map, so we have to convert it explicitly.
+     *
+     * @param wrapValues wrap arrays and collections with {@link JSONObject#wrap}, which is only
+     *                   available from KitKat
+     */
+    public static JSONObject toJSONObject(Bundle bundle, boolean wrapValues) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (String key : bundle.keySet()) {
+            Object value = bundle.get(key);
+            if (value instanceof Bundle) {
+                json.put(key, toJSONObject((Bundle) value, wrapValues));
+            } else if (wrapValues) {
+                json.put(key, JSONObject.wrap(value));
+            } else {
+                json.put(key, value);
+            }
+        }
+        return json;
+    }
+}
@@ -0,0 +1,271 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.annotation.TargetApi;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * The notification channels notifications are posted to, on Android 8 and later.
+ * <p>
+ * The default channel comes from the notification_channel_name, _description and _importance
+ * meta-data, more are declared by the notification_channels meta-data, a JSON array of
+ * {id, name, description, importance, vibrate, lights}, or from JS. They are created in a single
+ * createNotificationChannels call when the engine warms up. Which channels exist is cached, so
+ * posting a notification makes no system call for its channel; a payload picks one with its
+ * channelId field, unknown ones fall back to the default channel.
+ */
+public class RNPushNotificationChannels {
+    public static final String DEFAULT_CHANNEL_ID = "rn-push-notification-channel-id";
+
+    private static RNPushNotificationChannels instance;
+
+    private final Context context;
+    // Declared channels by id, the default one first, guarded by this
+    private final Map<String, Channel> declared = new LinkedHashMap<>();
+    // Channels known to exist, read without locking on the hot path
+    private final Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Ids that are neither declared nor created by the app, guarded by this
+    private final Set<String> missing = new HashSet<>();
+    // Set once createAll ran, channels declared after that are created on their own, guarded by this
+    private boolean createdAll;
+
+    private final AtomicLong systemCallCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    public static synchronized RNPushNotificationChannels getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationChannels(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the channels if they were declared, null otherwise, without reading the manifest
+     */
+    static synchronized RNPushNotificationChannels peekInstance() {
+        return instance;
+    }
+
+    private RNPushNotificationChannels(Context context) {
+        this.context = context;
+
+        RNPushNotificationConfig config = new RNPushNotificationConfig(context);
+        String name = config.getChannelName();
+        declare(new Channel(DEFAULT_CHANNEL_ID, name != null ? name : "rn-push-notification-channel",
+                config.getChannelDescription(), parseImportance(config.getChannelImportance()), true, true));
+
+        String channels = config.getChannels();
+        if (channels != null) {
+            try {
+                JSONArray array = new JSONArray(channels);
+                for (int i = 0; i < array.length(); i++) {
+                    declare(Channel.fromJson(array.getJSONObject(i)));
+                }
+            } catch (JSONException e) {
+                Log.w(LOG_TAG, "Unable to read the notification channels in the manifest, only the default one is used", e);
+            }
+        }
+    }
+
+    /**
+     * Declare a channel, created along with the others, or right away if they already were.
+     * Declaring it again updates its name and description, Android keeps its other settings
+     * once created.
+     */
+    public synchronized void declare(Channel channel) {
+        declared.put(channel.id, channel);
+        missing.remove(channel.id);
+        if (createdAll && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            createChannel(channel);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void createChannel(Channel channel) {
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null) {
+            return;
+        }
+        manager.createNotificationChannel(channel.toNotificationChannel());
+        systemCallCount.incrementAndGet();
+        created.add(channel.id);
+    }
+
+    /**
+     * Create all declared channels, in a single system call.
+     */
+    public void createAll() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        long start = RNPushNotificationMetrics.begin("createNotificationChannels");
+        try {
+            createChannels();
+        } finally {
+            RNPushNotificationMetrics.end("createNotificationChannels", start);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private synchronized void createChannels() {
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null) {
+            return;
+        }
+
+        List<NotificationChannel> channels = new ArrayList<>(declared.size());
+        for (Channel channel : declared.values()) {
+            channels.add(channel.toNotificationChannel());
+        }
+        manager.createNotificationChannels(channels);
+        systemCallCount.incrementAndGet();
+        created.addAll(declared.keySet());
+        createdAll = true;
+    }
+
+    /**
+     * @param channelId the channel the notification asks for, null for the default one
+     * @return the id of a channel that exists, the default one if the requested one does not
+     */
+    public String resolve(String channelId) {
+        if (channelId == null) {
+            channelId = DEFAULT_CHANNEL_ID;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || created.contains(channelId)) {
+            return channelId;
+        }
+        return resolveUncached(channelId);
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private synchronized String resolveUncached(String channelId) {
+        if (created.contains(channelId)) {
+            return channelId;
+        }
+
+        if (declared.containsKey(channelId)) {
+            // Not warmed up yet, create them all while at it
+            createChannels();
+            return channelId;
+        }
+
+        if (!missing.contains(channelId)) {
+            // Possibly created by the app itself, look it up once
+            NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            systemCallCount.incrementAndGet();
+            if (manager != null && manager.getNotificationChannel(channelId) != null) {
+                created.add(channelId);
+                return channelId;
+            }
+            missing.add(channelId);
+        }
+
+        Log.w(LOG_TAG, "No notification channel " + channelId + ", falling back to " + DEFAULT_CHANNEL_ID);
+        fallbackCount.incrementAndGet();
+        return resolve(DEFAULT_CHANNEL_ID);
+    }
+
+    public synchronized int getDeclaredCount() {
+        return declared.size();
+    }
+
+    public int getCreatedCount() {
+        return created.size();
+    }
+
+    public long getSystemCallCount() {
+        return systemCallCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    /**
+     * @return the importance named, high if it is missing or not one a channel can be created
+     * with, as a single invalid one would fail the whole createNotificationChannels call
+     */
+    static int parseImportance(String importance) {
+        if (importance == null) {
+            return NotificationManager.IMPORTANCE_HIGH;
+        }
+        switch (importance.toLowerCase(Locale.ROOT)) {
+            case "default":
+                return NotificationManager.IMPORTANCE_DEFAULT;
+            case "max":
+                return NotificationManager.IMPORTANCE_MAX;
+            case "high":
+                return NotificationManager.IMPORTANCE_HIGH;
+            case "low":
+                return NotificationManager.IMPORTANCE_LOW;
+            case "min":
+                return NotificationManager.IMPORTANCE_MIN;
+            case "none":
+                return NotificationManager.IMPORTANCE_NONE;
+            default:
+                Log.w(LOG_TAG, "Invalid notification channel importance " + importance + ", falling back to high");
+                return NotificationManager.IMPORTANCE_HIGH;
+        }
+    }
+
+    public static class Channel {
+        private final String id;
+        private final String name;
+        private final String description;
+        private final int importance;
+        private final boolean vibrate;
+        private final boolean lights;
+
+        public Channel(String id, String name, String description, int importance, boolean vibrate, boolean lights) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.importance = importance;
+            this.vibrate = vibrate;
+            this.lights = lights;
+        }
+
+        /**
+         * @throws JSONException if id is missing
+         */
+        public static Channel fromJson(JSONObject json) throws JSONException {
+            String id = json.getString("id");
+            return new Channel(id, json.optString("name", id), json.optString("description", ""),
+                    parseImportance(json.optString("importance", null)), json.optBoolean("vibrate", true),
+                    json.optBoolean("lights", true));
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        @TargetApi(Build.VERSION_CODES.O)
+        NotificationChannel toNotificationChannel() {
+            NotificationChannel channel = new NotificationChannel(id, name, importance);
+            channel.setDescription(description);
+            channel.enableLights(lights);
+            channel.enableVibration(vibrate);
+            return channel;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Debounces renders of the same notification.
+ * <p>
+ * The first render of a key that was quiet for a whole window runs right away. Renders arriving
+ * within the window after that are collapsed: only the most recent one runs, once the window has
+ * elapsed. This keeps inbox style conversations under the system notify() rate limit.
+ */
+public class RNPushNotificationCoalescer {
+    private static final int MAX_IDLE_KEYS = 64;
+
+    private static RNPushNotificationCoalescer instance;
+
+    private final RNPushNotificationPipeline pipeline;
+    private final long windowMillis;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private long coalescedCount;
+
+    public static synchronized RNPushNotificationCoalescer getInstance(Context context) {
+        if (instance == null) {
+            RNPushNotificationConfig config = new RNPushNotificationConfig(context.getApplicationContext());
+            instance = new RNPushNotificationCoalescer(RNPushNotificationPipeline.getInstance(context), config.getInboxCoalesceWindow());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the coalescer if a render went through it, null otherwise
+     */
+    static synchronized RNPushNotificationCoalescer peekInstance() {
+        return instance;
+    }
+
+    private RNPushNotificationCoalescer(RNPushNotificationPipeline pipeline, long windowMillis) {
+        this.pipeline = pipeline;
+        this.windowMillis = windowMillis;
+    }
+
+    public void submit(final String key, Runnable render) {
+        if (windowMillis <= 0) {
+            render.run();
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long delay;
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                pruneIdleEntries(now);
+                entry = new Entry();
+                entries.put(key, entry);
+            } else if (entry.pending != null) {
+                // A trailing render is already scheduled, it will pick up this one instead
+                entry.pending = render;
+                coalescedCount++;
+                return;
+            }
+
+            delay = entry.lastRunAt + windowMillis - now;
+            if (entry.lastRunAt == 0 || delay <= 0) {
+                entry.lastRunAt = now;
+                delay = 0;
+            } else {
+                entry.pending = render;
+            }
+        }
+
+        if (delay == 0) {
+            render.run();
+            return;
+        }
+
+        pipeline.postDelayed(new Runnable() {
+            public void run() {
+                runPending(key);
+            }
+        }, delay);
+    }
+
+    public long getCoalescedCount() {
+        synchronized (entries) {
+            return coalescedCount;
+        }
+    }
+
+    private void runPending(String key) {
+        Runnable render;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.pending == null) {
+                return;
+            }
+            render = entry.pending;
+            entry.pending = null;
+            entry.lastRunAt = SystemClock.uptimeMillis();
+        }
+        render.run();
+    }
+
+    private void pruneIdleEntries(long now) {
+        if (entries.size() < MAX_IDLE_KEYS) {
+            return;
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.pending == null && now - entry.lastRunAt >= windowMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        long lastRunAt;
+        Runnable pending;
+    }
+}
@@ -0,0 +1,116 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.ReactApplication;
+import com.facebook.react.ReactInstanceManager;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContext;
+
+import java.util.ArrayDeque;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Hands remote notifications to React, starting it when the app was killed.
+ * <p>
+ * While React is being created, bundles are queued in arrival order behind a single
+ * {@link ReactInstanceManager.ReactInstanceEventListener}, which drains the queue once and
+ * removes itself. The time from the first queued bundle to its delivery is recorded as the
+ * "coldStart" metric.
+ * <p>
+ * Everything here runs on the main thread, as the React code assumes that is true.
+ */
+public class RNPushNotificationColdStart implements ReactInstanceManager.ReactInstanceEventListener {
+    public interface Delivery {
+        void deliver(ReactApplicationContext context, Bundle bundle);
+    }
+
+    private static RNPushNotificationColdStart instance;
+
+    private final Context context;
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private ReactInstanceManager listeningTo;
+    private long coldStartAt;
+
+    public static synchronized RNPushNotificationColdStart getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationColdStart(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RNPushNotificationColdStart(Context context) {
+        this.context = context;
+    }
+
+    public void deliver(Bundle bundle, Delivery delivery) {
+        // Construct and load our normal React JS code bundle
+        ReactInstanceManager reactInstanceManager = ((ReactApplication) context).getReactNativeHost().getReactInstanceManager();
+        ReactContext reactContext = reactInstanceManager.getCurrentReactContext();
+
+        // If it's constructed and nothing is waiting ahead of us, send the notification
+        if (reactContext != null && queue.isEmpty()) {
+            delivery.deliver((ReactApplicationContext) reactContext, bundle);
+            return;
+        }
+
+        // Otherwise wait for construction, then send the notification
+        queue.add(new Pending(bundle, delivery));
+        if (listeningTo == reactInstanceManager) {
+            return;
+        }
+        if (listeningTo != null) {
+            // The host recreated its instance manager, follow the new one
+            listeningTo.removeReactInstanceEventListener(this);
+        }
+        listeningTo = reactInstanceManager;
+        coldStartAt = SystemClock.elapsedRealtime();
+        reactInstanceManager.addReactInstanceEventListener(this);
+
+        if (reactContext != null) {
+            // Only reachable with a stale queue: the context is there already, drain now
+            onReactContextInitialized(reactContext);
+        } else if (!reactInstanceManager.hasStartedCreatingInitialContext()) {
+            // Construct it in the background
+            reactInstanceManager.createReactContextInBackground();
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public void onReactContextInitialized(ReactContext reactContext) {
+        if (listeningTo != null) {
+            listeningTo.removeReactInstanceEventListener(this);
+            listeningTo = null;
+        }
+
+        int count = queue.size();
+        boolean first = true;
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.delivery.deliver((ReactApplicationContext) reactContext, pending.bundle);
+            if (first) {
+                RNPushNotificationMetrics.recordTime("coldStart", SystemClock.elapsedRealtime() - coldStartAt);
+                first = false;
+            }
+        }
+        Log.v(LOG_TAG, "Delivered " + count + " notifications after React started");
+    }
+
+    private static class Pending {
+        final Bundle bundle;
+        final Delivery delivery;
+
+        Pending(Bundle bundle, Delivery delivery) {
+            this.bundle = bundle;
+            this.delivery = delivery;
+        }
+    }
+}
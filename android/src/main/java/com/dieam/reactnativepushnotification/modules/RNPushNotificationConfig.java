@@ -10,7 +10,18 @@ import android.util.Log;
 class RNPushNotificationConfig {
     private static final String KEY_CHANNEL_NAME = "com.dieam.reactnativepushnotification.notification_channel_name";
     private static final String KEY_CHANNEL_DESCRIPTION = "com.dieam.reactnativepushnotification.notification_channel_description";
+    private static final String KEY_CHANNEL_IMPORTANCE = "com.dieam.reactnativepushnotification.notification_channel_importance";
+    private static final String KEY_CHANNELS = "com.dieam.reactnativepushnotification.notification_channels";
     private static final String KEY_NOTIFICATION_COLOR = "com.dieam.reactnativepushnotification.notification_color";
+    private static final String KEY_PIPELINE_QUEUE_CAPACITY = "com.dieam.reactnativepushnotification.pipeline_queue_capacity";
+    private static final String KEY_INBOX_COALESCE_WINDOW = "com.dieam.reactnativepushnotification.inbox_coalesce_window";
+    private static final String KEY_SINGLE_ALARM_SCHEDULER = "com.dieam.reactnativepushnotification.single_alarm_scheduler";
+    private static final String KEY_IMAGE_FETCH_TIMEOUT = "com.dieam.reactnativepushnotification.image_fetch_timeout";
+    private static final String KEY_NATIVE_MAP_DELIVERY = "com.dieam.reactnativepushnotification.native_map_delivery";
+    private static final String KEY_MESSAGE_SINK_FLUSH_DEADLINE = "com.dieam.reactnativepushnotification.message_sink_flush_deadline";
+    private static final String KEY_WATERMELON_SINK = "com.dieam.reactnativepushnotification.watermelon_sink";
+    private static final String KEY_DEDUPE_CAPACITY = "com.dieam.reactnativepushnotification.dedupe_capacity";
+    private static final String KEY_PROCESSING_BUDGET = "com.dieam.reactnativepushnotification.processing_budget";
 
     private static Bundle metadata;
     private Context context;
@@ -47,6 +58,26 @@ class RNPushNotificationConfig {
         // Default
         return "";
     }
+    public String getChannelImportance() {
+        try {
+            if (metadata.containsKey(KEY_CHANNEL_IMPORTANCE)) {
+                return metadata.getString(KEY_CHANNEL_IMPORTANCE);
+            }
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_CHANNEL_IMPORTANCE + " in manifest. Falling back to default");
+        }
+        // Default
+        return "high";
+    }
+    public String getChannels() {
+        try {
+            return metadata.getString(KEY_CHANNELS);
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_CHANNELS + " in manifest. Falling back to default");
+        }
+        // Default
+        return null;
+    }
     public int getNotificationColor() {
         try {
             int resourceId = metadata.getInt(KEY_NOTIFICATION_COLOR);
@@ -57,4 +88,101 @@ class RNPushNotificationConfig {
         // Default
         return -1;
     }
+    public int getPipelineQueueCapacity() {
+        try {
+            int capacity = metadata.getInt(KEY_PIPELINE_QUEUE_CAPACITY);
+            if (capacity > 0) {
+                return capacity;
+            }
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_PIPELINE_QUEUE_CAPACITY + " in manifest. Falling back to default");
+        }
+        // Default
+        return 256;
+    }
+    public int getInboxCoalesceWindow() {
+        try {
+            if (metadata.containsKey(KEY_INBOX_COALESCE_WINDOW)) {
+                return metadata.getInt(KEY_INBOX_COALESCE_WINDOW);
+            }
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_INBOX_COALESCE_WINDOW + " in manifest. Falling back to default");
+        }
+        // Default
+        return 500;
+    }
+    public boolean isSingleAlarmScheduler() {
+        try {
+            return metadata.getBoolean(KEY_SINGLE_ALARM_SCHEDULER, false);
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_SINGLE_ALARM_SCHEDULER + " in manifest. Falling back to default");
+        }
+        // Default
+        return false;
+    }
+    public int getImageFetchTimeout() {
+        try {
+            int timeout = metadata.getInt(KEY_IMAGE_FETCH_TIMEOUT);
+            if (timeout > 0) {
+                return timeout;
+            }
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_IMAGE_FETCH_TIMEOUT + " in manifest. Falling back to default");
+        }
+        // Default
+        return 3000;
+    }
+    public boolean isNativeMapDelivery() {
+        try {
+            return metadata.getBoolean(KEY_NATIVE_MAP_DELIVERY, false);
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_NATIVE_MAP_DELIVERY + " in manifest. Falling back to default");
+        }
+        // Default
+        return false;
+    }
+    public int getMessageSinkFlushDeadline() {
+        try {
+            int deadline = metadata.getInt(KEY_MESSAGE_SINK_FLUSH_DEADLINE);
+            if (deadline > 0) {
+                return deadline;
+            }
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_MESSAGE_SINK_FLUSH_DEADLINE + " in manifest. Falling back to default");
+        }
+        // Default
+        return 1000;
+    }
+    public boolean isWatermelonSinkEnabled() {
+        try {
+            return metadata.getBoolean(KEY_WATERMELON_SINK, true);
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_WATERMELON_SINK + " in manifest. Falling back to default");
+        }
+        // Default
+        return true;
+    }
+    public int getDedupeCapacity() {
+        try {
+            if (metadata.containsKey(KEY_DEDUPE_CAPACITY)) {
+                return Math.max(0, metadata.getInt(KEY_DEDUPE_CAPACITY));
+            }
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_DEDUPE_CAPACITY + " in manifest. Falling back to default");
+        }
+        // Default
+        return 500;
+    }
+    public int getProcessingBudget() {
+        try {
+            int budget = metadata.getInt(KEY_PROCESSING_BUDGET);
+            if (budget > 0) {
+                return budget;
+            }
+        } catch (Exception e) {
+            Log.w(RNPushNotification.LOG_TAG, "Unable to find " + KEY_PROCESSING_BUDGET + " in manifest. Falling back to default");
+        }
+        // Default
+        return 5000;
+    }
 }
@@ -0,0 +1,252 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.core.util.AtomicFile;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * First stage of the listener services: drops pushes that were already received, as FCM
+ * redelivers on flaky connections and servers retry chat messages, before they cost a parse,
+ * a badge update, a trip through React or a notification.
+ * <p>
+ * A push is known by its transport message id and, for chat messages, by the messageId of its
+ * payload, which survives server side retries. The most recent ids are kept in a bounded LRU set,
+ * {@code com.dieam.reactnativepushnotification.dedupe_capacity} of them (500 by default, 0
+ * disables the stage), and persisted so redeliveries after a process restart are caught too.
+ * <p>
+ * A push is only recorded once it was shown and handed to the message sinks, or deferred, see
+ * {@link #commit}. Until then it is in flight: redeliveries meanwhile are dropped, but if the
+ * process dies first, the next one goes through.
+ */
+public class RNPushNotificationDedupe {
+    private static final String FILE_NAME = "rn_push_notification_recent_ids.txt";
+    private static final String PAYLOAD_ID_PREFIX = "payload:";
+
+    private static RNPushNotificationDedupe instance;
+
+    private final AtomicFile file;
+    private final RNPushNotificationPipeline pipeline;
+    private final int capacity;
+    private Map<String, Boolean> recentIds;
+    // Ids let through but not recorded yet, guarded by this
+    private final Set<String> inFlight = new HashSet<>();
+
+    private final AtomicLong checkedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    // Set while a persist is queued, so a burst is written once rather than once per push
+    private final AtomicBoolean persistQueued = new AtomicBoolean();
+    private final Runnable persistRunnable = new Runnable() {
+        public void run() {
+            persistQueued.set(false);
+            persist();
+        }
+    };
+
+    public static synchronized RNPushNotificationDedupe getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationDedupe(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the dedupe if a push was checked, null otherwise, without loading the seen ids
+     */
+    static synchronized RNPushNotificationDedupe peekInstance() {
+        return instance;
+    }
+
+    private RNPushNotificationDedupe(Context context) {
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        this.pipeline = RNPushNotificationPipeline.getInstance(context);
+        this.capacity = new RNPushNotificationConfig(context).getDedupeCapacity();
+    }
+
+    /**
+     * Check the push against those seen, and if it is new, hold it in flight until
+     * {@link #commit}.
+     *
+     * @param messageId the transport message id, null if there is none
+     * @param bundle    the push, whose payload may carry a chat message id
+     * @return true if the push was seen before, and should be dropped
+     */
+    public boolean isDuplicate(String messageId, Bundle bundle) {
+        if (capacity == 0) {
+            return false;
+        }
+
+        long start = RNPushNotificationMetrics.begin("dedupe");
+        try {
+            String payloadId = getPayloadId(bundle);
+            if (isEmpty(messageId) && payloadId == null) {
+                // Nothing to tell it by
+                return false;
+            }
+
+            checkedCount.incrementAndGet();
+            boolean duplicate;
+            synchronized (this) {
+                load();
+                // Both are looked up, so either one refreshes its entry as the most recent
+                duplicate = isKnown(messageId) | isKnown(payloadId);
+                if (!duplicate) {
+                    addInFlight(messageId);
+                    addInFlight(payloadId);
+                }
+            }
+            if (duplicate) {
+                duplicateCount.incrementAndGet();
+                Log.d(LOG_TAG, "Dropping duplicate push " + (isEmpty(messageId) ? payloadId : messageId));
+            }
+            return duplicate;
+        } finally {
+            RNPushNotificationMetrics.end("dedupe", start);
+        }
+    }
+
+    /**
+     * Record a push that {@link #isDuplicate} let through as seen, once it no longer needs to be
+     * received again.
+     */
+    public void commit(String messageId, Bundle bundle) {
+        if (capacity == 0) {
+            return;
+        }
+
+        String payloadId = getPayloadId(bundle);
+        synchronized (this) {
+            load();
+            record(messageId);
+            record(payloadId);
+        }
+        if (persistQueued.compareAndSet(false, true)) {
+            pipeline.post(persistRunnable);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getSize() {
+        return recentIds == null ? 0 : recentIds.size();
+    }
+
+    public long getCheckedCount() {
+        return checkedCount.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return the share of checked pushes that were duplicates, 0 before any push
+     */
+    public double getHitRate() {
+        long checked = checkedCount.get();
+        return checked == 0 ? 0 : (double) duplicateCount.get() / checked;
+    }
+
+    private static String getPayloadId(Bundle bundle) {
+        RNPushNotificationPayload payload = RNPushNotificationPayload.of(bundle);
+        if (payload != null && !payload.getMessageId().isEmpty()) {
+            return PAYLOAD_ID_PREFIX + payload.getMessageId();
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the id was recorded, refreshing it as the most recent, or is in flight
+     */
+    private boolean isKnown(String id) {
+        if (isEmpty(id)) {
+            return false;
+        }
+        return recentIds.get(id) != null || inFlight.contains(id);
+    }
+
+    private void addInFlight(String id) {
+        if (!isEmpty(id)) {
+            inFlight.add(id);
+        }
+    }
+
+    private void record(String id) {
+        if (isEmpty(id)) {
+            return;
+        }
+        inFlight.remove(id);
+        // Ids are stored one per line
+        if (id.indexOf('\n') < 0) {
+            recentIds.put(id, Boolean.TRUE);
+        }
+    }
+
+    private static boolean isEmpty(String id) {
+        return id == null || id.isEmpty();
+    }
+
+    private void load() {
+        if (recentIds != null) {
+            return;
+        }
+        // Access ordered, so the least recently seen id is evicted first
+        recentIds = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+        try {
+            // Oldest first, so the order survives the reload
+            String stored = new String(file.readFully(), "UTF-8");
+            for (String id : stored.split("\n")) {
+                if (!id.isEmpty()) {
+                    recentIds.put(id, Boolean.TRUE);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing received yet
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read recent push ids, starting afresh", e);
+        }
+    }
+
+    private void persist() {
+        StringBuilder ids = new StringBuilder();
+        synchronized (this) {
+            for (String id : recentIds.keySet()) {
+                ids.append(id).append('\n');
+            }
+        }
+
+        FileOutputStream output = null;
+        try {
+            output = file.startWrite();
+            output.write(ids.toString().getBytes("UTF-8"));
+            file.finishWrite(output);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to persist recent push ids", e);
+            if (output != null) {
+                file.failWrite(output);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Runs the stages of remote pushes that did not fit in their processing budget, see
+ * {@link RNPushNotificationDeferredWork}.
+ * <p>
+ * The badge and the message sinks are started on the pipeline thread, then remote fetch events are
+ * sent once React is up. The job only finishes once the badge is applied, the message sinks are
+ * done and the last event is sent, and the events it did not get to when stopped are queued again.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class RNPushNotificationDeferredJobService extends JobService {
+    // The running job, its remote fetch events not sent yet and whether the badge and the
+    // message sinks are done, only touched on the main thread
+    private JobParameters running;
+    private List<RNPushNotificationDeferredWork.Entry> remoteFetches;
+    private boolean stored;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        running = params;
+        remoteFetches = null;
+        stored = false;
+
+        final RNPushNotificationDeferredWork work = RNPushNotificationDeferredWork.getInstance(this);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        // Queued even past the pipeline's limit, as the main thread's work always is
+        RNPushNotificationPipeline.getInstance(this).post(new Runnable() {
+            public void run() {
+                long start = RNPushNotificationMetrics.begin("deferredJob");
+                final List<RNPushNotificationDeferredWork.Entry> fetches;
+                try {
+                    fetches = work.runEntries(work.drain(), new Runnable() {
+                        public void run() {
+                            handler.post(new Runnable() {
+                                public void run() {
+                                    if (running == params) {
+                                        stored = true;
+                                        finishIfDone();
+                                    }
+                                }
+                            });
+                        }
+                    });
+                } finally {
+                    RNPushNotificationMetrics.end("deferredJob", start);
+                }
+
+                handler.post(new Runnable() {
+                    public void run() {
+                        if (running == params) {
+                            sendRemoteFetches(work, params, fetches);
+                        }
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    private void sendRemoteFetches(RNPushNotificationDeferredWork work, final JobParameters params, List<RNPushNotificationDeferredWork.Entry> fetches) {
+        final List<RNPushNotificationDeferredWork.Entry> pending = new ArrayList<>(fetches);
+        remoteFetches = pending;
+        for (final RNPushNotificationDeferredWork.Entry entry : fetches) {
+            work.sendRemoteFetch(entry, new Runnable() {
+                public void run() {
+                    // Unless the job was stopped meanwhile, and the list dropped
+                    if (pending.remove(entry) && remoteFetches == pending) {
+                        finishIfDone();
+                    }
+                }
+            });
+        }
+        finishIfDone();
+    }
+
+    private void finishIfDone() {
+        if (running != null && stored && remoteFetches != null && remoteFetches.isEmpty()) {
+            JobParameters params = running;
+            running = null;
+            remoteFetches = null;
+            jobFinished(params, false);
+        }
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (remoteFetches != null && !remoteFetches.isEmpty()) {
+            Log.w(LOG_TAG, "Deferred notification work stopped, queueing " + remoteFetches.size() + " remote fetch events again");
+            RNPushNotificationDeferredWork.getInstance(this).requeue(new ArrayList<>(remoteFetches));
+            remoteFetches.clear();
+        }
+        running = null;
+        remoteFetches = null;
+        // What was left is queued again, which schedules the job anew
+        return false;
+    }
+}
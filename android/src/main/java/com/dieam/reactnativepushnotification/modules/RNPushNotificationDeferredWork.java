@@ -0,0 +1,579 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.util.AtomicFile;
+
+import com.dieam.reactnativepushnotification.helpers.ApplicationBadgeHelper;
+import com.facebook.react.bridge.ReactApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Keeps a remote push within the few seconds of execution it is given.
+ * <p>
+ * The listener services only get to run while onMessageReceived does, so they wait there for
+ * the push's {@link Task}, at most {@code com.dieam.reactnativepushnotification.processing_budget}
+ * ms (5000 by default) from receipt. The notification is always shown first; the stages that can
+ * wait, the badge, handing chat messages to the message sinks and the remote fetch event, run
+ * after it. Whatever has not started once the budget is spent is queued, persisted, and run by
+ * {@link RNPushNotificationDeferredJobService} instead, so a cold React context no longer gets the
+ * process killed halfway through a database write.
+ */
+public class RNPushNotificationDeferredWork {
+    public static final int STAGE_NOTIFY = 1;
+    public static final int STAGE_BADGE = 1 << 1;
+    public static final int STAGE_PERSIST = 1 << 2;
+    public static final int STAGE_REMOTE_FETCH = 1 << 3;
+    private static final int DEFERRABLE_STAGES = STAGE_BADGE | STAGE_PERSIST | STAGE_REMOTE_FETCH;
+    // Once these are done, or deferred, the push is safe from being lost
+    private static final int SETTLING_STAGES = STAGE_NOTIFY | STAGE_PERSIST;
+
+    static final int JOB_ID = 0x524e504e;
+
+    private static final String FILE_NAME = "rn_push_notification_deferred_work.bin";
+    private static final int FILE_VERSION = 1;
+    private static final int CAPACITY = 100;
+
+    private static RNPushNotificationDeferredWork instance;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final RNPushNotificationPipeline pipeline;
+    private final int budget;
+    private List<Entry> entries;
+
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong deferredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+
+    private final Runnable persistRunnable = new Runnable() {
+        public void run() {
+            persist();
+        }
+    };
+
+    public static synchronized RNPushNotificationDeferredWork getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationDeferredWork(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the deferred work if a push created it, null otherwise, without reading the
+     * deferred entries
+     */
+    static synchronized RNPushNotificationDeferredWork peekInstance() {
+        return instance;
+    }
+
+    private RNPushNotificationDeferredWork(Context context) {
+        this.context = context;
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        this.pipeline = RNPushNotificationPipeline.getInstance(context);
+        this.budget = new RNPushNotificationConfig(context).getProcessingBudget();
+    }
+
+    /**
+     * @param bundle     the push, with its id, foreground and userInteraction set
+     * @param dataBadge  the badge of the push's data field, -1 if it has none
+     * @param receivedAt when onMessageReceived was entered, in {@link SystemClock#elapsedRealtime}
+     * @param onSettled  run once the notification is shown and the message sinks are done, or
+     *                   deferred, so the push no longer needs to be received again, may be null
+     */
+    public Task newTask(Bundle bundle, int dataBadge, long receivedAt, Runnable onSettled) {
+        taskCount.incrementAndGet();
+
+        int stages = STAGE_NOTIFY;
+        boolean shown = !bundle.getBoolean("foreground") && bundle.getString("message") != null;
+        if (dataBadge >= 0 || (shown && (bundle.containsKey("incrementBadge") || bundle.containsKey("badge")))) {
+            stages |= STAGE_BADGE;
+        }
+        if (shown && RNPushNotificationPayload.of(bundle) != null) {
+            stages |= STAGE_PERSIST;
+        }
+        if (bundle.getString("contentAvailable", "false").equalsIgnoreCase("true")) {
+            stages |= STAGE_REMOTE_FETCH;
+        }
+        return new Task(bundle, dataBadge, stages, receivedAt + budget, onSettled);
+    }
+
+    /**
+     * Wait for the task until its budget is spent, then queue what has not started for
+     * {@link RNPushNotificationDeferredJobService}.
+     */
+    public void await(Task task) {
+        long start = RNPushNotificationMetrics.begin("awaitBudget");
+        try {
+            task.await();
+            int deferred = task.claimAll();
+            if (deferred != 0) {
+                try {
+                    defer(task.bundle, task.dataBadge, deferred);
+                } finally {
+                    task.finish(deferred);
+                }
+            }
+        } finally {
+            RNPushNotificationMetrics.end("awaitBudget", start);
+        }
+    }
+
+    /**
+     * Run the badge and persist stages of the task, if still up to it. They are started on the
+     * calling thread and finish once the badge is applied and the message sinks are done, not
+     * merely queued, as the push is only safe to let go of then.
+     */
+    public void runStages(final Task task) {
+        if (task.claim(STAGE_BADGE)) {
+            try {
+                applyBadge(task.bundle, task.dataBadge, task.finisher(STAGE_BADGE));
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "failed to update the badge", e);
+                task.finish(STAGE_BADGE);
+            }
+        }
+        if (task.claim(STAGE_PERSIST)) {
+            try {
+                RNPushNotificationEngine.getInstance(context).getHelper().dispatchMessages(task.bundle, task.finisher(STAGE_PERSIST));
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "failed to hand messages to the message sinks", e);
+                task.finish(STAGE_PERSIST);
+            }
+        }
+    }
+
+    /**
+     * Send the remote fetch event of the task, if still up to it. Runs on the main thread, with
+     * React up.
+     */
+    public void runRemoteFetch(Task task, RNPushNotificationJsDelivery jsDelivery) {
+        if (task.claim(STAGE_REMOTE_FETCH)) {
+            try {
+                jsDelivery.notifyRemoteFetch(task.bundle);
+            } finally {
+                task.finish(STAGE_REMOTE_FETCH);
+            }
+        }
+    }
+
+    /**
+     * @param onApplied run once the badge is set, rather than once the debounce is over
+     */
+    private void applyBadge(Bundle bundle, int dataBadge, Runnable onApplied) {
+        if (dataBadge >= 0) {
+            ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(context, dataBadge);
+        }
+        if (!bundle.getBoolean("foreground") && bundle.getString("message") != null) {
+            RNPushNotificationEngine.getInstance(context).getHelper().applyBadge(bundle);
+        }
+        ApplicationBadgeHelper.INSTANCE.flush(onApplied);
+    }
+
+    private void defer(Bundle bundle, int dataBadge, int stages) {
+        Entry entry = new Entry(RNPushNotificationBundleCodec.encode(bundle), dataBadge, stages);
+        deferredCount.incrementAndGet();
+        Log.i(LOG_TAG, "Processing budget of " + budget + "ms spent, deferring stages " + stages + " of " + bundle.getString("id"));
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            // No JobScheduler, run them in the background right away instead
+            List<Entry> batch = new ArrayList<>();
+            batch.add(entry);
+            runInBackground(batch);
+            return;
+        }
+
+        synchronized (this) {
+            load();
+            entries.add(entry);
+            while (entries.size() > CAPACITY) {
+                entries.remove(0);
+                droppedCount.incrementAndGet();
+            }
+        }
+        // Right away rather than on the pipeline, which is likely what is running late, as the
+        // process may go once onMessageReceived returns
+        persist();
+        scheduleJobOrRun();
+    }
+
+    /**
+     * Run the entries on the pipeline thread, and their remote fetch events on the main thread,
+     * where there is no job to run them.
+     */
+    private void runInBackground(final List<Entry> work) {
+        boolean queued = pipeline.post(new Runnable() {
+            public void run() {
+                for (final Entry remoteFetch : runEntries(work, null)) {
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        public void run() {
+                            sendRemoteFetch(remoteFetch, null);
+                        }
+                    });
+                }
+            }
+        });
+        if (!queued && !pipeline.isPipelineThread() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            // Dropped as the pipeline is full, keep the work for the next job rather than lose it
+            synchronized (this) {
+                load();
+                entries.addAll(0, work);
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void scheduleJobOrRun() {
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, RNPushNotificationDeferredJobService.class))
+                .setPersisted(true)
+                .setOverrideDeadline(0)
+                .build();
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        try {
+            if (scheduler.schedule(job) == JobScheduler.RESULT_SUCCESS) {
+                return;
+            }
+            Log.w(LOG_TAG, "Unable to schedule deferred notification work, running it now");
+        } catch (IllegalArgumentException e) {
+            // The job service is missing from the merged manifest, or lacks BIND_JOB_SERVICE
+            Log.w(LOG_TAG, "Unable to schedule deferred notification work, running it now", e);
+        }
+        runInBackground(drain());
+    }
+
+    /**
+     * Remove all queued work.
+     *
+     * @return the work, oldest first
+     */
+    List<Entry> drain() {
+        List<Entry> drained;
+        synchronized (this) {
+            load();
+            drained = entries;
+            entries = new ArrayList<>();
+        }
+        if (!drained.isEmpty()) {
+            pipeline.post(persistRunnable);
+        }
+        return drained;
+    }
+
+    /**
+     * Put work back at the front of the queue, when the job was stopped before finishing it.
+     */
+    void requeue(List<Entry> work) {
+        synchronized (this) {
+            load();
+            entries.addAll(0, work);
+        }
+        pipeline.post(persistRunnable);
+        scheduleJobOrRun();
+    }
+
+    /**
+     * Run the badge and persist stages of the entries, started on the calling thread.
+     *
+     * @param onDone run once the badge is applied and the message sinks are done with all of
+     *               them, may be null
+     * @return the remote fetch events left to send, as entries of their own
+     */
+    List<Entry> runEntries(List<Entry> work, final Runnable onDone) {
+        // One for each stage started, and one for the loop itself
+        final AtomicInteger running = new AtomicInteger(1);
+        Runnable onStageDone = new Runnable() {
+            public void run() {
+                if (running.decrementAndGet() == 0 && onDone != null) {
+                    onDone.run();
+                }
+            }
+        };
+
+        List<Entry> remoteFetches = new ArrayList<>();
+        for (Entry entry : work) {
+            Bundle bundle;
+            try {
+                bundle = entry.getBundle();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Dropping unreadable deferred notification work", e);
+                continue;
+            }
+
+            if ((entry.stages & STAGE_BADGE) != 0) {
+                running.incrementAndGet();
+                try {
+                    applyBadge(bundle, entry.dataBadge, onStageDone);
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Deferred badge update failed", e);
+                    onStageDone.run();
+                }
+            }
+            if ((entry.stages & STAGE_PERSIST) != 0) {
+                running.incrementAndGet();
+                try {
+                    RNPushNotificationEngine.getInstance(context).getHelper().dispatchMessages(bundle, onStageDone);
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Deferred hand off to the message sinks failed", e);
+                    onStageDone.run();
+                }
+            }
+            if ((entry.stages & STAGE_REMOTE_FETCH) != 0) {
+                remoteFetches.add(new Entry(entry.bundle, -1, STAGE_REMOTE_FETCH));
+            }
+            replayedCount.incrementAndGet();
+        }
+        onStageDone.run();
+        return remoteFetches;
+    }
+
+    /**
+     * Send the remote fetch event of the entry, starting React if needed. Runs on the main thread,
+     * as the React code assumes that is true.
+     *
+     * @param onSent run once it is sent, may be null
+     */
+    void sendRemoteFetch(Entry entry, final Runnable onSent) {
+        Bundle bundle;
+        try {
+            bundle = entry.getBundle();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Dropping unreadable deferred remote fetch", e);
+            if (onSent != null) {
+                onSent.run();
+            }
+            return;
+        }
+
+        RNPushNotificationColdStart.getInstance(context).deliver(bundle, new RNPushNotificationColdStart.Delivery() {
+            public void deliver(ReactApplicationContext context, Bundle bundle) {
+                new RNPushNotificationJsDelivery(context).notifyRemoteFetch(bundle);
+                if (onSent != null) {
+                    onSent.run();
+                }
+            }
+        });
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public synchronized int getDepth() {
+        load();
+        return entries.size();
+    }
+
+    public long getTaskCount() {
+        return taskCount.get();
+    }
+
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    /**
+     * @return the share of pushes that spent their budget, 0 before any push
+     */
+    public double getDeferralRate() {
+        long tasks = taskCount.get();
+        return tasks == 0 ? 0 : (double) deferredCount.get() / tasks;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new ArrayList<>();
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(file.readFully()));
+            int version = input.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unknown deferred work version " + version);
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                int stages = input.readInt();
+                int dataBadge = input.readInt();
+                byte[] bundle = new byte[input.readInt()];
+                input.readFully(bundle);
+                entries.add(new Entry(bundle, dataBadge, stages));
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing deferred
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read deferred notification work, dropping it", e);
+        }
+    }
+
+    private void persist() {
+        // From the listener and the pipeline threads, one at a time
+        synchronized (file) {
+            write();
+        }
+    }
+
+    private void write() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream output = new DataOutputStream(bytes);
+            synchronized (this) {
+                output.writeInt(FILE_VERSION);
+                output.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    output.writeInt(entry.stages);
+                    output.writeInt(entry.dataBadge);
+                    output.writeInt(entry.bundle.length);
+                    output.write(entry.bundle);
+                }
+            }
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+
+        FileOutputStream output = null;
+        try {
+            output = file.startWrite();
+            bytes.writeTo(output);
+            file.finishWrite(output);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to persist deferred notification work", e);
+            if (output != null) {
+                file.failWrite(output);
+            }
+        }
+    }
+
+    /**
+     * The stages of one push. Each deferrable stage is claimed exactly once, either by whoever
+     * runs it in time or by {@link #await} to defer it.
+     */
+    public static class Task {
+        private final Bundle bundle;
+        private final int dataBadge;
+        private final long deadline;
+        private final AtomicInteger unclaimed;
+        // Stages not finished yet, and what to run once the settling ones are, guarded by this
+        private int pending;
+        private Runnable onSettled;
+
+        Task(Bundle bundle, int dataBadge, int stages, long deadline, Runnable onSettled) {
+            this.bundle = bundle;
+            this.dataBadge = dataBadge;
+            this.deadline = deadline;
+            this.unclaimed = new AtomicInteger(stages & DEFERRABLE_STAGES);
+            this.pending = stages;
+            this.onSettled = onSettled;
+        }
+
+        /**
+         * @return true if the caller got the stage, and has to run it then call {@link #finish}
+         */
+        public boolean claim(int stage) {
+            int stages;
+            do {
+                stages = unclaimed.get();
+                if ((stages & stage) == 0) {
+                    return false;
+                }
+            } while (!unclaimed.compareAndSet(stages, stages & ~stage));
+            return true;
+        }
+
+        /**
+         * @return a callback finishing the stage, for stages that complete on another thread
+         */
+        Runnable finisher(final int stage) {
+            return new Runnable() {
+                public void run() {
+                    finish(stage);
+                }
+            };
+        }
+
+        public void finish(int stage) {
+            Runnable settled = null;
+            synchronized (this) {
+                pending &= ~stage;
+                if ((pending & SETTLING_STAGES) == 0) {
+                    settled = onSettled;
+                    onSettled = null;
+                }
+                if (pending == 0) {
+                    notifyAll();
+                }
+            }
+            if (settled != null) {
+                settled.run();
+            }
+        }
+
+        /**
+         * Claim every stage left, for the caller to defer then {@link #finish}.
+         */
+        private int claimAll() {
+            return unclaimed.getAndSet(0);
+        }
+
+        private synchronized void await() {
+            long remaining;
+            while (pending != 0 && (remaining = deadline - SystemClock.elapsedRealtime()) > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    static class Entry {
+        private final byte[] bundle;
+        private final int dataBadge;
+        private final int stages;
+
+        Entry(byte[] bundle, int dataBadge, int stages) {
+            this.bundle = bundle;
+            this.dataBadge = dataBadge;
+            this.stages = stages;
+        }
+
+        Bundle getBundle() throws IOException {
+            return RNPushNotificationBundleCodec.decode(bundle);
+        }
+    }
+}
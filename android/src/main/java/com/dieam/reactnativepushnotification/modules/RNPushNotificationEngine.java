@@ -0,0 +1,100 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * The process-wide notification engine: one {@link RNPushNotificationHelper} shared by the
+ * module, the listener services and the receivers, instead of one per message.
+ * <p>
+ * Whatever the helper needs is resolved on first use, or ahead of time by {@link #warmUp()}:
+ * the manifest configuration, the launcher activity, the resource table, the notification
+ * channels, the schedule store, the background pipeline and the message dispatcher. Call it
+ * from {@code Application.onCreate} to take that cost out of the first notification; the
+ * module does so on the pipeline thread otherwise.
+ */
+public class RNPushNotificationEngine {
+    private static RNPushNotificationEngine instance;
+
+    private final Application context;
+    private final AtomicBoolean warmedUp = new AtomicBoolean();
+    private RNPushNotificationHelper helper;
+    private volatile long warmUpMillis = -1;
+
+    public static synchronized RNPushNotificationEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationEngine((Application) context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RNPushNotificationEngine(Application context) {
+        this.context = context;
+    }
+
+    public synchronized RNPushNotificationHelper getHelper() {
+        if (helper == null) {
+            long start = SystemClock.elapsedRealtime();
+            helper = new RNPushNotificationHelper(context);
+            RNPushNotificationMetrics.recordTime("engineInit", SystemClock.elapsedRealtime() - start);
+        }
+        return helper;
+    }
+
+    /**
+     * Resolve everything the first notification would otherwise wait for. Only the first call
+     * does any work; it blocks on disk and package manager access, so keep it off the main
+     * thread where possible.
+     */
+    public void warmUp() {
+        if (!warmedUp.compareAndSet(false, true)) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        RNPushNotificationHelper helper = getHelper();
+        helper.getMainActivityClass();
+        RNPushNotificationHelper.loadResourceTable(context);
+        RNPushNotificationChannels.getInstance(context).createAll();
+        RNPushNotificationScheduleStore scheduleStore = RNPushNotificationScheduleStore.getInstance(context);
+        scheduleStore.migrate();
+        scheduleStore.getWritableDatabase();
+        RNPushNotificationPipeline.getInstance(context);
+        RNPushNotificationMessageDispatcher.getInstance(context);
+
+        warmUpMillis = SystemClock.elapsedRealtime() - start;
+        RNPushNotificationMetrics.recordTime("engineWarmUp", warmUpMillis);
+        Log.v(LOG_TAG, "Notification engine warmed up in " + warmUpMillis + " ms");
+    }
+
+    /**
+     * {@link #warmUp()} on the pipeline thread.
+     */
+    public void warmUpAsync() {
+        if (warmedUp.get()) {
+            return;
+        }
+        RNPushNotificationPipeline.getInstance(context).post(new Runnable() {
+            public void run() {
+                warmUp();
+            }
+        });
+    }
+
+    public boolean isWarmedUp() {
+        return warmUpMillis >= 0;
+    }
+
+    /**
+     * @return how long {@link #warmUp()} took in milliseconds, or -1 if it has not completed
+     */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
+}
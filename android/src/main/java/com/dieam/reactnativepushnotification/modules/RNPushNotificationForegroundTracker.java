@@ -0,0 +1,136 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.ActivityManager.RunningAppProcessInfo;
+import android.app.Application;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Whether the app is in the foreground, kept up to date by activity lifecycle callbacks so it can
+ * be answered without asking the ActivityManager.
+ * <p>
+ * The app is in the foreground while at least one of its activities is started. Activities
+ * started before the tracker got registered are accounted for by asking the system once, at
+ * registration, and by the React host resuming. As they were never seen starting, their stops
+ * don't count against the activities that were.
+ */
+public class RNPushNotificationForegroundTracker implements Application.ActivityLifecycleCallbacks {
+    public interface Listener {
+        /**
+         * Called on the main thread when the app moves to the foreground or the background.
+         */
+        void onForegroundChanged(boolean foreground);
+    }
+
+    private static RNPushNotificationForegroundTracker instance;
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong transitionCount = new AtomicLong();
+    private volatile boolean foreground;
+    // Only touched by lifecycle callbacks, on the main thread
+    private final Set<Activity> startedActivities = new HashSet<>();
+
+    public static synchronized RNPushNotificationForegroundTracker getInstance(Application application) {
+        if (instance == null) {
+            instance = new RNPushNotificationForegroundTracker();
+            application.registerActivityLifecycleCallbacks(instance);
+        }
+        return instance;
+    }
+
+    private RNPushNotificationForegroundTracker() {
+        this(isProcessForeground());
+    }
+
+    RNPushNotificationForegroundTracker(boolean foreground) {
+        this.foreground = foreground;
+    }
+
+    private static boolean isProcessForeground() {
+        RunningAppProcessInfo processInfo = new RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(processInfo);
+        return processInfo.importance == RunningAppProcessInfo.IMPORTANCE_FOREGROUND;
+    }
+
+    public boolean isForeground() {
+        return foreground;
+    }
+
+    public long getTransitionCount() {
+        return transitionCount.get();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The React host resumed, so one of its activities is in the foreground.
+     */
+    void onHostResume() {
+        setForeground(true);
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        startedActivities.add(activity);
+        setForeground(true);
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        // Going from an activity started before registration to another one stops the first with
+        // the second already started, which a bare count would have clamped to none
+        startedActivities.remove(activity);
+        // A configuration change stops the activity only to start it again right away
+        if (startedActivities.isEmpty() && !activity.isChangingConfigurations()) {
+            setForeground(false);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+
+    private void setForeground(boolean foreground) {
+        if (this.foreground == foreground) {
+            return;
+        }
+        this.foreground = foreground;
+        transitionCount.incrementAndGet();
+        Log.v(LOG_TAG, foreground ? "App moved to the foreground" : "App moved to the background");
+
+        for (Listener listener : listeners) {
+            listener.onForegroundChanged(foreground);
+        }
+    }
+}
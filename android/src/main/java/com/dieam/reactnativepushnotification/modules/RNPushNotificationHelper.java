@@ -4,16 +4,13 @@ package com.dieam.reactnativepushnotification.modules;
 import android.app.AlarmManager;
 import android.app.Application;
 import android.app.Notification;
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.media.RingtoneManager;
 import android.net.Uri;
@@ -22,56 +19,54 @@ import android.os.Bundle;
 import androidx.core.app.NotificationCompat;
 import android.util.Log;
 
-import android.database.sqlite.SQLiteOpenHelper;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.Cursor;
-
 import com.facebook.react.bridge.ReadableMap;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.HashMap;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 import com.dieam.reactnativepushnotification.helpers.ApplicationBadgeHelper;
 import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
-import static com.dieam.reactnativepushnotification.modules.RNPushNotificationAttributes.fromJson;
 
 public class RNPushNotificationHelper {
     public static final String PREFERENCES_KEY = "rn_push_notification";
     private static final long DEFAULT_VIBRATION = 300L;
-    private static final String NOTIFICATION_CHANNEL_ID = "rn-push-notification-channel-id";
-    private static HashMap<Integer, ArrayList<String>> messageMap = new HashMap<Integer, ArrayList<String>>();
-    private static int messageCountAll = 0;
+    private static final String MISSED_SUMMARY_TAG = "rn-push-notification-missed";
+    private static final int MISSED_SUMMARY_ID = 0;
+    private static final Map<String, Integer> resourceIds = new ConcurrentHashMap<>();
+    private static volatile boolean resourceTableLoaded = false;
 
     private Context context;
     private RNPushNotificationConfig config;
-    private final SharedPreferences scheduledNotificationsPersistence;
-    private static final int ONE_MINUTE = 60 * 1000;
-    private static final long ONE_HOUR = 60 * ONE_MINUTE;
-    private static final long ONE_DAY = 24 * ONE_HOUR;
+    private final RNPushNotificationScheduleStore scheduledNotificationsPersistence;
+    private final RNPushNotificationInboxHistory inboxHistory;
+    private final RNPushNotificationChannels channels;
+    private volatile boolean rearmDeferred;
+    private volatile Class mainActivityClass;
 
     public RNPushNotificationHelper(Application context) {
         this.context = context;
         this.config = new RNPushNotificationConfig(context);
-        this.scheduledNotificationsPersistence = context.getSharedPreferences(RNPushNotificationHelper.PREFERENCES_KEY, Context.MODE_PRIVATE);
+        this.scheduledNotificationsPersistence = RNPushNotificationScheduleStore.getInstance(context);
+        this.inboxHistory = RNPushNotificationInboxHistory.getInstance(context);
+        this.channels = RNPushNotificationChannels.getInstance(context);
     }
 
     public Class getMainActivityClass() {
+        // The launcher activity does not change while the app runs, resolve it once
+        if (mainActivityClass != null) {
+            return mainActivityClass;
+        }
         String packageName = context.getPackageName();
         Intent launchIntent = context.getPackageManager().getLaunchIntentForPackage(packageName);
         String className = launchIntent.getComponent().getClassName();
         try {
-            return Class.forName(className);
+            mainActivityClass = Class.forName(className);
+            return mainActivityClass;
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
             return null;
@@ -79,23 +74,12 @@ public class RNPushNotificationHelper {
     }
 
     public void setNotificationHistory(int notId, String message) {
-        ArrayList<String> messageList = messageMap.get(notId);
-        if (messageList == null) {
-            messageList = new ArrayList<String>();
-            messageMap.put(notId, messageList);
-        }
-
-        if (message.isEmpty()) {
-            messageList.clear();
-        } else {
-            messageList.add(message);
-        }
+        inboxHistory.add(notId, message);
     }
 
     public void clearNotificationHistory() {
-        messageMap.clear();
-        messageCountAll = 0;
-        ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(context, messageCountAll);
+        inboxHistory.clear();
+        ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(context, 0);
     }
 
     private AlarmManager getAlarmManager() {
@@ -113,46 +97,53 @@ public class RNPushNotificationHelper {
     }
 
     public void sendNotificationScheduled(Bundle bundle) {
-        Class intentClass = getMainActivityClass();
-        if (intentClass == null) {
-            Log.e(LOG_TAG, "No activity class found for the scheduled notification");
-            return;
-        }
+        long start = RNPushNotificationMetrics.begin("sendNotificationScheduled");
+        try {
+            Class intentClass = getMainActivityClass();
+            if (intentClass == null) {
+                Log.e(LOG_TAG, "No activity class found for the scheduled notification");
+                return;
+            }
 
-        if (bundle.getString("message") == null) {
-            Log.e(LOG_TAG, "No message specified for the scheduled notification");
-            return;
-        }
+            if (bundle.getString("message") == null) {
+                Log.e(LOG_TAG, "No message specified for the scheduled notification");
+                return;
+            }
 
-        if (bundle.getString("id") == null) {
-            Log.e(LOG_TAG, "No notification ID specified for the scheduled notification");
-            return;
-        }
+            if (bundle.getString("id") == null) {
+                Log.e(LOG_TAG, "No notification ID specified for the scheduled notification");
+                return;
+            }
 
-        double fireDate = bundle.getDouble("fireDate");
-        if (fireDate == 0) {
-            Log.e(LOG_TAG, "No date specified for the scheduled notification");
-            return;
-        }
+            double fireDate = bundle.getDouble("fireDate");
+            if (fireDate == 0) {
+                Log.e(LOG_TAG, "No date specified for the scheduled notification");
+                return;
+            }
 
-        RNPushNotificationAttributes notificationAttributes = new RNPushNotificationAttributes(bundle);
-        String id = notificationAttributes.getId();
+            RNPushNotificationAttributes notificationAttributes = new RNPushNotificationAttributes(bundle);
+            String id = notificationAttributes.getId();
 
-        Log.d(LOG_TAG, "Storing push notification with id " + id);
+            Log.d(LOG_TAG, "Storing push notification with id " + id);
 
-        SharedPreferences.Editor editor = scheduledNotificationsPersistence.edit();
-        editor.putString(id, notificationAttributes.toJson().toString());
-        commit(editor);
+            boolean isSaved = scheduledNotificationsPersistence.put(notificationAttributes);
+            if (!isSaved) {
+                Log.e(LOG_TAG, "Failed to save " + id);
+            }
 
-        boolean isSaved = scheduledNotificationsPersistence.contains(id);
-        if (!isSaved) {
-            Log.e(LOG_TAG, "Failed to save " + id);
+            sendNotificationScheduledCore(bundle);
+        } finally {
+            RNPushNotificationMetrics.end("sendNotificationScheduled", start);
         }
-
-        sendNotificationScheduledCore(bundle);
     }
 
     public void sendNotificationScheduledCore(Bundle bundle) {
+        if (config.isSingleAlarmScheduler()) {
+            // The entry is already in the store, only the earliest one needs an alarm
+            rearmScheduler();
+            return;
+        }
+
         long fireDate = (long) bundle.getDouble("fireDate");
 
         // If the fireDate is in past, this will fire immediately and show the
@@ -168,28 +159,247 @@ public class RNPushNotificationHelper {
         }
     }
 
-    public void sendToNotificationCentre(Bundle bundle) {
+    /**
+     * Single alarm scheduler mode: arm one alarm for the earliest scheduled notification, or
+     * cancel it when nothing is left.
+     */
+    public void rearmScheduler() {
+        if (rearmDeferred) {
+            // Re-armed once the batch is done, see setRearmDeferred
+            return;
+        }
+
+        long start = RNPushNotificationMetrics.begin("rearmScheduler");
         try {
-            Class intentClass = getMainActivityClass();
-            if (intentClass == null) {
-                Log.e(LOG_TAG, "No activity class found for the notification");
+            Intent tickIntent = new Intent(context, RNPushNotificationPublisher.class);
+            tickIntent.setAction(RNPushNotificationPublisher.ACTION_SCHEDULER_TICK);
+            PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0, tickIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+            Long nextFireDate = scheduledNotificationsPersistence.getNextFireDate();
+            if (nextFireDate == null) {
+                getAlarmManager().cancel(pendingIntent);
                 return;
             }
 
-            if (bundle.getString("message") == null) {
-                // this happens when a 'data' notification is received - we do not synthesize a local notification in this case
-                Log.d(LOG_TAG, "Cannot send to notification centre because there is no 'message' field in: " + bundle);
-                return;
+            Log.d(LOG_TAG, "Arming scheduler for " + nextFireDate);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                getAlarmManager().setExact(AlarmManager.RTC_WAKEUP, nextFireDate, pendingIntent);
+            } else {
+                getAlarmManager().set(AlarmManager.RTC_WAKEUP, nextFireDate, pendingIntent);
             }
+        } finally {
+            RNPushNotificationMetrics.end("rearmScheduler", start);
+        }
+    }
 
-            String notificationIdString = bundle.getString("id");
-            if (notificationIdString == null) {
-                Log.e(LOG_TAG, "No notification ID specified for the notification");
-                return;
+    /**
+     * Single alarm scheduler mode: show every notification that is due, then arm the alarm for
+     * the next one.
+     */
+    public void publishDueNotifications() {
+        List<RNPushNotificationAttributes> due = scheduledNotificationsPersistence.getDue(System.currentTimeMillis());
+        Log.i(LOG_TAG, "Publishing " + due.size() + " due notifications");
+
+        setRearmDeferred(true);
+        try {
+            for (RNPushNotificationAttributes notificationAttributes : due) {
+                Bundle bundle = notificationAttributes.toBundle();
+                if (!sendToNotificationCentre(bundle)) {
+                    // Still due otherwise, and the alarm would be armed for it again right away
+                    Log.w(LOG_TAG, "Dropping due notification " + notificationAttributes.getId() + " that could not be shown");
+                    dismissMissedNotification(bundle);
+                }
             }
+        } finally {
+            setRearmDeferred(false);
+        }
+    }
+
+    /**
+     * Defer re-arming the single alarm scheduler while processing a batch of scheduled
+     * notifications. It is re-armed once when deferral ends.
+     */
+    void setRearmDeferred(boolean deferred) {
+        rearmDeferred = deferred;
+        if (!deferred && config.isSingleAlarmScheduler()) {
+            rearmScheduler();
+        }
+    }
+
+    /**
+     * Take a scheduled notification whose time has passed without showing it: it is removed
+     * from the store, and scheduled again if it is repeating.
+     */
+    void dismissMissedNotification(Bundle bundle) {
+        scheduledNotificationsPersistence.remove(bundle.getString("id"));
+        scheduleNextNotificationIfRepeating(bundle);
+    }
+
+    /**
+     * Show a single notification standing for a number of missed scheduled notifications.
+     *
+     * @param count number of missed notifications
+     * @param lines messages of some of them
+     */
+    void sendMissedNotificationsSummary(int count, List<String> lines) {
+        Class intentClass = getMainActivityClass();
+        if (intentClass == null) {
+            Log.e(LOG_TAG, "No activity class found for the notification");
+            return;
+        }
 
-            Resources res = context.getResources();
-            String packageName = context.getPackageName();
+        ApplicationInfo appInfo = context.getApplicationInfo();
+        String title = context.getPackageManager().getApplicationLabel(appInfo).toString();
+        String text = count + " missed notifications";
+
+        NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(title).setSummaryText(text);
+        for (String line : lines) {
+            inboxStyle.addLine(line);
+        }
+
+        Intent intent = new Intent(context, intentClass);
+        intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, MISSED_SUMMARY_ID, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        NotificationCompat.Builder notification = new NotificationCompat.Builder(context, channels.resolve(null))
+                .setContentTitle(title)
+                .setContentText(text)
+                .setNumber(count)
+                .setStyle(inboxStyle)
+                .setSmallIcon(getSmallIconResId(null))
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true);
+
+        NotificationManager notificationManager = notificationManager();
+        notificationManager.notify(MISSED_SUMMARY_TAG, MISSED_SUMMARY_ID, notification.build());
+    }
+
+    /**
+     * @return true if the notification was shown
+     */
+    public boolean sendToNotificationCentre(final Bundle bundle) {
+        long start = RNPushNotificationMetrics.begin("sendToNotificationCentre");
+        boolean shown = false;
+        try {
+            shown = showNotification(bundle);
+            if (shown) {
+                applyBadge(bundle);
+                dispatchMessages(bundle);
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "failed to send push notification", e);
+        } finally {
+            RNPushNotificationMetrics.end("sendToNotificationCentre", start);
+        }
+        return shown;
+    }
+
+    /**
+     * The user visible part of {@link #sendToNotificationCentre}, remote pushes run the rest
+     * within their processing budget, see {@link RNPushNotificationDeferredWork}.
+     *
+     * @return false if there is nothing to show, the badge and message sinks are left alone then
+     */
+    public boolean showNotification(final Bundle bundle) {
+        final Class intentClass = getMainActivityClass();
+        if (intentClass == null) {
+            Log.e(LOG_TAG, "No activity class found for the notification");
+            return false;
+        }
+
+        if (bundle.getString("message") == null) {
+            // this happens when a 'data' notification is received - we do not synthesize a local notification in this case
+            Log.d(LOG_TAG, "Cannot send to notification centre because there is no 'message' field in: " + bundle);
+            return false;
+        }
+
+        String notificationIdString = bundle.getString("id");
+        if (notificationIdString == null) {
+            Log.e(LOG_TAG, "No notification ID specified for the notification");
+            return false;
+        }
+
+        // TIPS: Section of "ibox style notification"
+        // - Notificaiton inbox are grouped by id so this way is posible to have multiple inbox
+        // - If app is foreground nothing to do here there are inside "sendToNotificationCentre"
+        // - History is updated for every message but renders of the same inbox are coalesced,
+        //   a burst would otherwise exceed the notify() rate limit and updates would get dropped
+        if (isInboxStyle(bundle)) {
+            setNotificationHistory(Integer.parseInt(notificationIdString), bundle.getString("message"));
+            RNPushNotificationCoalescer.getInstance(context).submit(bundle.getString("tag") + ":" + notificationIdString, new Runnable() {
+                public void run() {
+                    postNotification(bundle, intentClass);
+                }
+            });
+        } else {
+            postNotification(bundle, intentClass);
+        }
+
+        // Remove the notification from the scheduled store once it has been shown
+        // to avoid showing the notification again when the phone is rebooted. If the
+        // notification is not removed, then every time the phone is rebooted, we will
+        // try to reschedule all the notifications stored in the scheduled store and since
+        // these notifications will be in the past time, they will be shown immediately
+        // to the user which we shouldn't do. So, remove the notification from the scheduled
+        // store once it has been shown to the user. If it is a repeating notification
+        // it will be scheduled again. Remote pushes and local notifications shown right away
+        // have no fireDate and were never stored, so they skip the database.
+        if (bundle.containsKey("fireDate")) {
+            scheduledNotificationsPersistence.remove(notificationIdString);
+        }
+
+        // Can't use setRepeating for recurring notifications because setRepeating
+        // is inexact by default starting API 19 and the notifications are not fired
+        // at the exact time. During testing, it was found that notifications could
+        // late by many minutes.
+        this.scheduleNextNotificationIfRepeating(bundle);
+        return true;
+    }
+
+    public void applyBadge(Bundle bundle) {
+        //## Section of: "Increment Badge"
+        if(bundle.containsKey("incrementBadge") && bundle.getString("incrementBadge").equals("true")){
+            ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(context, inboxHistory.incrementBadgeCount());
+        }else if(bundle.containsKey("badge")){
+            int badge = Integer.parseInt(bundle.getString("badge"));
+            ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(context, badge);
+            inboxHistory.setBadgeCount(badge);
+        }
+    }
+
+    public void dispatchMessages(Bundle bundle) {
+        dispatchMessages(bundle, null);
+    }
+
+    /**
+     * @param onFlushed run once the message sinks are done with the bundle's messages, right away
+     *                  if it has none, may be null
+     */
+    public void dispatchMessages(Bundle bundle, Runnable onFlushed) {
+        //## Section of: update last_message in contacts (in background like whatsapp)
+        // TIP: chat messages in the payload go to the registered message sinks, on their own thread
+        RNPushNotificationPayload payload = RNPushNotificationPayload.of(bundle);
+        if(payload != null){
+            RNPushNotificationMessageDispatcher.getInstance(context).dispatch(payload, getSentTime(bundle), onFlushed);
+        }else if(onFlushed != null){
+            onFlushed.run();
+        }
+    }
+
+    private static boolean isUrl(String value) {
+        return value.startsWith("http://") || value.startsWith("https://");
+    }
+
+    private boolean isInboxStyle(Bundle bundle) {
+        return "inbox".equals(bundle.getString("style"));
+    }
+
+    private void postNotification(Bundle bundle, Class intentClass) {
+        long start = RNPushNotificationMetrics.begin("postNotification");
+        try {
+            String notificationIdString = bundle.getString("id");
 
             String title = bundle.getString("title");
             if (title == null) {
@@ -241,7 +451,9 @@ public class RNPushNotificationHelper {
                 }
             }
 
-            NotificationCompat.Builder notification = new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
+            // Channels are created ahead of time, this only makes sure the payload's one exists
+            String channelId = channels.resolve(bundle.getString("channelId"));
+            NotificationCompat.Builder notification = new NotificationCompat.Builder(context, channelId)
                     .setContentTitle(title)
                     .setTicker(bundle.getString("ticker"))
                     .setVisibility(visibility)
@@ -268,35 +480,25 @@ public class RNPushNotificationHelper {
                 notification.setNumber(Integer.parseInt(numberString));
             }
 
-            int smallIconResId;
-            int largeIconResId;
-
-            String smallIcon = bundle.getString("smallIcon");
-
-            if (smallIcon != null) {
-                smallIconResId = res.getIdentifier(smallIcon, "mipmap", packageName);
-            } else {
-                smallIconResId = res.getIdentifier("ic_notification", "mipmap", packageName);
-            }
+            int smallIconResId = getSmallIconResId(bundle.getString("smallIcon"));
+            RNPushNotificationImageLoader imageLoader = RNPushNotificationImageLoader.getInstance(context);
 
-            if (smallIconResId == 0) {
-                smallIconResId = res.getIdentifier("ic_launcher", "mipmap", packageName);
-
-                if (smallIconResId == 0) {
-                    smallIconResId = android.R.drawable.ic_dialog_info;
+            if (largeIcon != null && isUrl(largeIcon)) {
+                Bitmap largeIconBitmap = imageLoader.loadLargeIcon(largeIcon);
+                if (largeIconBitmap != null) {
+                    notification.setLargeIcon(largeIconBitmap);
+                }
+            } else if (largeIcon != null || Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                int largeIconResId;
+                if (largeIcon != null) {
+                    largeIconResId = getResourceId(largeIcon, "mipmap");
+                } else {
+                    largeIconResId = getResourceId("ic_launcher", "mipmap");
                 }
-            }
-
-            if (largeIcon != null) {
-                largeIconResId = res.getIdentifier(largeIcon, "mipmap", packageName);
-            } else {
-                largeIconResId = res.getIdentifier("ic_launcher", "mipmap", packageName);
-            }
-
-            Bitmap largeIconBitmap = BitmapFactory.decodeResource(res, largeIconResId);
 
-            if (largeIconResId != 0 && (largeIcon != null || Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)) {
-                notification.setLargeIcon(largeIconBitmap);
+                if (largeIconResId != 0) {
+                    notification.setLargeIcon(imageLoader.loadLargeIcon(largeIconResId));
+                }
             }
 
             notification.setSmallIcon(smallIconResId);
@@ -308,14 +510,20 @@ public class RNPushNotificationHelper {
 
             notification.setStyle(new NotificationCompat.BigTextStyle().bigText(bigText));
 
-            // TIPS: Section of "ibox style notification"
-            // - Notificaiton inbox are grouped by id so this way is posible to have multiple inbox
-            // - If app is foreground nothing to do here there are inside "sendToNotificationCentre"
-            if(bundle.containsKey("style") && bundle.getString("style").equals("inbox")){
+            String bigPicture = bundle.getString("bigPicture");
+            if (bigPicture != null && isUrl(bigPicture)) {
+                Bitmap bigPictureBitmap = imageLoader.loadBigPicture(bigPicture);
+                if (bigPictureBitmap != null) {
+                    notification.setStyle(new NotificationCompat.BigPictureStyle()
+                            .bigPicture(bigPictureBitmap)
+                            .setSummaryText(bundle.getString("message")));
+                }
+            }
+
+            if(isInboxStyle(bundle)){
                 int notId = Integer.parseInt(bundle.getString("id"));
-                setNotificationHistory(notId, bundle.getString("message"));
-                ArrayList<String> messageList = messageMap.get(notId);
-                Integer sizeList = messageList.size();
+                List<String> messageList = inboxHistory.getLines(notId);
+                Integer sizeList = inboxHistory.getCount(notId);
 
                 if (sizeList > 1) {
                     String sizeListMessage = sizeList.toString();
@@ -327,8 +535,8 @@ public class RNPushNotificationHelper {
                     NotificationCompat.InboxStyle notificationInbox = new NotificationCompat.InboxStyle()
                         .setBigContentTitle(bundle.getString("title")).setSummaryText(stacking);
 
-                    for (int i = messageList.size() - 1; i >= 0; i--) {
-                        notificationInbox.addLine(messageList.get(i));
+                    for (String line : messageList) {
+                        notificationInbox.addLine(line);
                     }
 
                     notification.setStyle(notificationInbox);
@@ -354,12 +562,10 @@ public class RNPushNotificationHelper {
                         // So the strings 'my_sound.mp3' AND 'my_sound' are accepted
                         // The reason is to make the iOS and android javascript interfaces compatible
 
-                        int resId;
-                        if (context.getResources().getIdentifier(soundName, "raw", context.getPackageName()) != 0) {
-                            resId = context.getResources().getIdentifier(soundName, "raw", context.getPackageName());
-                        } else {
+                        int resId = getResourceId(soundName, "raw");
+                        if (resId == 0) {
                             soundName = soundName.substring(0, soundName.lastIndexOf('.'));
-                            resId = context.getResources().getIdentifier(soundName, "raw", context.getPackageName());
+                            resId = getResourceId(soundName, "raw");
                         }
 
                         soundUri = Uri.parse("android.resource://" + context.getPackageName() + "/" + resId);
@@ -390,7 +596,6 @@ public class RNPushNotificationHelper {
                     PendingIntent.FLAG_UPDATE_CURRENT);
 
             NotificationManager notificationManager = notificationManager();
-            checkOrCreateChannel(notificationManager);
 
             notification.setContentIntent(pendingIntent);
 
@@ -436,168 +641,95 @@ public class RNPushNotificationHelper {
                 }
             }
 
-            // Remove the notification from the shared preferences once it has been shown
-            // to avoid showing the notification again when the phone is rebooted. If the
-            // notification is not removed, then every time the phone is rebooted, we will
-            // try to reschedule all the notifications stored in shared preferences and since
-            // these notifications will be in the past time, they will be shown immediately
-            // to the user which we shouldn't do. So, remove the notification from the shared
-            // preferences once it has been shown to the user. If it is a repeating notification
-            // it will be scheduled again.
-            if (scheduledNotificationsPersistence.getString(notificationIdString, null) != null) {
-                SharedPreferences.Editor editor = scheduledNotificationsPersistence.edit();
-                editor.remove(notificationIdString);
-                commit(editor);
-            }
-
             Notification info = notification.build();
             info.defaults |= Notification.DEFAULT_LIGHTS;
 
             //## Put a notification to be shown in the status bar
             // TIP: if some crash come after this will be capture and the notification will be displayed anyway
-            if (bundle.containsKey("tag")) {
-                String tag = bundle.getString("tag");
-                notificationManager.notify(tag, notificationID, info);
-            } else {
-                notificationManager.notify(notificationID, info);
-            }
-
-            // Can't use setRepeating for recurring notifications because setRepeating
-            // is inexact by default starting API 19 and the notifications are not fired
-            // at the exact time. During testing, it was found that notifications could
-            // late by many minutes.
-            this.scheduleNextNotificationIfRepeating(bundle);
-
-            //## Section of: "Increment Badge"
-            if(bundle.containsKey("incrementBadge") && bundle.getString("incrementBadge").equals("true")){
-                messageCountAll ++;
-                ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(context, messageCountAll);
-            }else if(bundle.containsKey("badge")){
-                ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(context, Integer.parseInt(bundle.getString("badge")));
-                messageCountAll = Integer.parseInt(bundle.getString("badge"));
-            }
-
-            //## Section of: update last_message in contacts (in background like whatsapp)
-            // TIP: Connecting with SQLite
-
-            // Log.i(LOG_TAG, "SQLiteDatabase bundle: " + bundle);
-
-            // WatermelonDB says: On some systems there is some kind of lock on `/databases` folder so we get from parent folder
-            String dbPath = context.getDatabasePath("watermelon.db").toString().replace("/databases", "");
-            SQLiteDatabase db =  SQLiteDatabase.openOrCreateDatabase(dbPath, null);
-            // Log.i(LOG_TAG, "SQLiteDatabase db: " + db);
-
-            // Show all tables (rawQuery)
-            // Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table'", null);
-            // if (c.moveToFirst()) {
-            //     while ( !c.isAfterLast() ) {
-            //         // Toast.makeText(activityName.this, "Table Name=> "+c.getString(0), Toast.LENGTH_LONG).show();
-            //         Log.i(LOG_TAG, "SQLiteDatabase cursor tables: " + c.getString(0));
-            //         c.moveToNext();
-            //     }
-            // }
-
-            // TIP: update last_message if has payload and type: "message" 
-            String payloadType = "";
-            if(bundle.containsKey("payload")){
-                JSONObject payload = new JSONObject(bundle.getString("payload"));
-                if(payload.has("type"))
-                    payloadType = payload.getString("type");
-            }
-
-            if(payloadType.equals("message")){
-                // TIP: for "last_message_created" in push bundle "google.sent_time" I think can be used or "System.currentTimeMillis()"
-                Long tsLong = System.currentTimeMillis();
-                String tsString = tsLong.toString()+".0";
-                DateFormat dfMessage = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-                String createdAtFormat = dfMessage.format(new Date(tsLong));
-                if(bundle.containsKey("google.sent_time")){
-                    tsLong = bundle.getLong("google.sent_time");
-                    createdAtFormat = dfMessage.format(new Date(tsLong));
-                    tsString = tsLong.toString()+".0";
+            long notifyStart = RNPushNotificationMetrics.begin("notify");
+            try {
+                if (bundle.containsKey("tag")) {
+                    String tag = bundle.getString("tag");
+                    notificationManager.notify(tag, notificationID, info);
+                } else {
+                    notificationManager.notify(notificationID, info);
                 }
+            } finally {
+                RNPushNotificationMetrics.end("notify", notifyStart);
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "failed to send push notification", e);
+        } finally {
+            RNPushNotificationMetrics.end("postNotification", start);
+        }
+    }
 
-                String contactId = "";
-                String rawText = "";
-                String messageId = "";
-                if(bundle.containsKey("payload")){
-                    JSONObject payload = new JSONObject(bundle.getString("payload"));
-                    JSONObject entity = payload.getJSONObject("entity");
-                    contactId = entity.getString("contact");
-                    if(entity.has("attributes")){
-                        JSONObject attributes = entity.getJSONObject("attributes");
-                        messageId = attributes.getString("messageId");
-                        rawText = attributes.getString("rawText");
-                        // Log.i(LOG_TAG, "SQLiteDatabase cursor messageId: " + messageId);
-                        // Log.i(LOG_TAG, "SQLiteDatabase cursor rawText: " + rawText);
-                    }
-                }
+    private long getSentTime(Bundle bundle) {
+        // TIP: for "last_message_created" in push bundle "google.sent_time" I think can be used or "System.currentTimeMillis()"
+        long created = System.currentTimeMillis();
+        if(bundle.containsKey("google.sent_time")){
+            created = bundle.getLong("google.sent_time");
+        }
 
-                String lastMessage = "";
-                if(bundle.containsKey("message")){
-                    lastMessage = bundle.getString("message");
-                }
+        // TEMP Disabled addLastMessageQuery
+        // createdAt should have this format: "2020-06-18T15:29:50.285Z" now have "2020-06-26T14:20:21"
+        // String lastMessageJson = "{\"_id\":\"fromPushPluginId\",\"audio\":null,\"correct\":null,\"createdAt\":\"${ca}\",\"image\":null,\"marker\":{\"type\":\"markable\"},\"text\":\"${lm}\",\"user\":{\"_id\":\"${_id}\"}}".replace("${lm}", lastMessage).replace("${_id}", contactId).replace("${ca}", createdAtFormat);
+        // String addLastMessageQuery = "UPDATE contacts SET messages_not_readed=${mnr}, last_message='${lm}', last_message_created=${lmc} WHERE _id='${_id}'".replace("${_id}", contactId).replace("${lm}", lastMessageJson).replace("${lmc}", tsString).replace("${mnr}", msNotRead);
 
-                String msNotRead = "0";
-                int notId = Integer.parseInt(bundle.getString("id"));
-                ArrayList<String> messageList = messageMap.get(notId);
-                msNotRead = Integer.toString(messageList.size());
-
-                // TEMP Disabled addLastMessageQuery
-                // createdAt should have this format: "2020-06-18T15:29:50.285Z" now have "2020-06-26T14:20:21"
-                // String lastMessageJson = "{\"_id\":\"fromPushPluginId\",\"audio\":null,\"correct\":null,\"createdAt\":\"${ca}\",\"image\":null,\"marker\":{\"type\":\"markable\"},\"text\":\"${lm}\",\"user\":{\"_id\":\"${_id}\"}}".replace("${lm}", lastMessage).replace("${_id}", contactId).replace("${ca}", createdAtFormat);
-                // String addLastMessageQuery = "UPDATE contacts SET messages_not_readed=${mnr}, last_message='${lm}', last_message_created=${lmc} WHERE _id='${_id}'".replace("${_id}", contactId).replace("${lm}", lastMessageJson).replace("${lmc}", tsString).replace("${mnr}", msNotRead);
-                // Log.i(LOG_TAG, "SQLiteDatabase addLastMessageQuery: " + addLastMessageQuery);
-                // db.execSQL(addLastMessageQuery);
-
-                // TIP: insert message in messages table
-                Cursor c = db.rawQuery("SELECT id FROM contacts WHERE _id='"+contactId+"'", null);
-                if (c.moveToFirst()) {
-                    String localContactId = c.getString(0);
-                    // Log.i(LOG_TAG, "SQLiteDatabase cursor contacts: " + localContactId);
-
-                    if(!messageId.equals("")){
-                        String text = rawText;
-                        String image = "";
-                        String audio = "";
-                        String correct = "";
-                        if(rawText.startsWith("formattedMessage=")){
-                            String textToJson = rawText.replace("formattedMessage=", "");
-                            JSONObject textParsed = new JSONObject(textToJson);
-                            String type = textParsed.getString("type");
-                            String source = "";
-                            String data = "";
-                            if(textParsed.has("source"))
-                                source = textParsed.getString("source");
-                            if(textParsed.has("data"))
-                                data = textParsed.getString("data");
-                            if (type.equals("image")) {
-                                text = "";
-                                image = source;
-                            } else if (type.equals("audio")) {
-                                text = "";
-                                audio = source;
-                            } else if (type.equals("correct")) {
-                                text = "";
-                                correct = data;
-                            }
-                        }
-                        // TODO add "audio duration"
-                        String addMessageQuery = "INSERT INTO 'messages'('id','_changed','_status','_id','archive_id','audio','correct','created','image','marker','text','user','contact_id','created_at','updated_at')" +
-                                        "VALUES ('${mId}','','created','${mId}',NULL,'${urlAudio}','${dataCorrect}',${created},'${urlImage}','{\"type\":\"markable\"}','${rawText}','{\"_id\":\"${uId}\"}','${lcId}',${created},0.0)"
-                                        .replace("${mId}", messageId).replace("${uId}", contactId).replace("${created}", tsString).replace("${lcId}", localContactId).replace("${rawText}", text).replace("${urlAudio}", audio).replace("${dataCorrect}", correct).replace("${urlImage}", image);
-                        db.execSQL(addMessageQuery);
-                    }
-                }
-                // End of: update last_message in contacts (in background like whatsapp)
+        return created;
+    }
 
+    private int getSmallIconResId(String smallIcon) {
+        int smallIconResId;
 
+        if (smallIcon != null) {
+            smallIconResId = getResourceId(smallIcon, "mipmap");
+        } else {
+            smallIconResId = getResourceId("ic_notification", "mipmap");
+        }
+
+        if (smallIconResId == 0) {
+            smallIconResId = getResourceId("ic_launcher", "mipmap");
+
+            if (smallIconResId == 0) {
+                smallIconResId = android.R.drawable.ic_dialog_info;
             }
+        }
+        return smallIconResId;
+    }
 
+    /**
+     * Cached {@link Resources#getIdentifier}, which is a slow string based lookup. Misses are
+     * cached as 0 too. When the generated {@link RNPushNotificationResourceTable} lists the app's
+     * resources, they are all resolved in one go on first use.
+     */
+    private int getResourceId(String name, String type) {
+        if (!resourceTableLoaded) {
+            loadResourceTable(context);
+        }
 
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "failed to send push notification", e);
+        String key = type + "/" + name;
+        Integer resId = resourceIds.get(key);
+        if (resId == null) {
+            resId = context.getResources().getIdentifier(name, type, context.getPackageName());
+            resourceIds.put(key, resId);
+        }
+        return resId;
+    }
+
+    static synchronized void loadResourceTable(Context context) {
+        if (resourceTableLoaded) {
+            return;
+        }
+        Resources res = context.getResources();
+        String packageName = context.getPackageName();
+        for (String name : RNPushNotificationResourceTable.MIPMAP) {
+            resourceIds.put("mipmap/" + name, res.getIdentifier(name, "mipmap", packageName));
+        }
+        for (String name : RNPushNotificationResourceTable.RAW) {
+            resourceIds.put("raw/" + name, res.getIdentifier(name, "raw", packageName));
         }
+        resourceTableLoaded = true;
     }
 
     private void scheduleNextNotificationIfRepeating(Bundle bundle) {
@@ -607,10 +739,8 @@ public class RNPushNotificationHelper {
         if (repeatType != null) {
             long fireDate = (long) bundle.getDouble("fireDate");
 
-            boolean validRepeatType = Arrays.asList("time", "month", "week", "day", "hour", "minute").contains(repeatType);
-
             // Sanity checks
-            if (!validRepeatType) {
+            if (!RNPushNotificationRepeat.isValidRepeatType(repeatType)) {
                 Log.w(LOG_TAG, String.format("Invalid repeatType specified as %s", repeatType));
                 return;
             }
@@ -621,45 +751,7 @@ public class RNPushNotificationHelper {
                 return;
             }
 
-            long newFireDate = 0;
-
-            switch (repeatType) {
-                case "time":
-                    newFireDate = fireDate + repeatTime;
-                    break;
-                case "month":
-                    final Calendar fireDateCalendar = new GregorianCalendar();
-                    fireDateCalendar.setTime(new Date(fireDate));
-                    final int fireDay = fireDateCalendar.get(Calendar.DAY_OF_MONTH);
-                    final int fireMinute = fireDateCalendar.get(Calendar.MINUTE);
-                    final int fireHour = fireDateCalendar.get(Calendar.HOUR_OF_DAY);
-
-                    final Calendar nextEvent = new GregorianCalendar();
-                    nextEvent.setTime(new Date());
-                    final int currentMonth = nextEvent.get(Calendar.MONTH);
-                    int nextMonth = currentMonth < 11 ? (currentMonth + 1) : 0;
-                    nextEvent.set(Calendar.YEAR, nextEvent.get(Calendar.YEAR) + (nextMonth == 0 ? 1 : 0));
-                    nextEvent.set(Calendar.MONTH, nextMonth);
-                    final int maxDay = nextEvent.getActualMaximum(Calendar.DAY_OF_MONTH);
-                    nextEvent.set(Calendar.DAY_OF_MONTH, fireDay <= maxDay ? fireDay : maxDay);
-                    nextEvent.set(Calendar.HOUR_OF_DAY, fireHour);
-                    nextEvent.set(Calendar.MINUTE, fireMinute);
-                    nextEvent.set(Calendar.SECOND, 0);
-                    newFireDate = nextEvent.getTimeInMillis();
-                    break;
-                case "week":
-                    newFireDate = fireDate + 7 * ONE_DAY;
-                    break;
-                case "day":
-                    newFireDate = fireDate + ONE_DAY;
-                    break;
-                case "hour":
-                    newFireDate = fireDate + ONE_HOUR;
-                    break;
-                case "minute":
-                    newFireDate = fireDate + ONE_MINUTE;
-                    break;
-            }
+            long newFireDate = RNPushNotificationRepeat.nextFireDate(repeatType, fireDate, repeatTime, System.currentTimeMillis());
 
             // Sanity check, should never happen
             if (newFireDate != 0) {
@@ -676,6 +768,7 @@ public class RNPushNotificationHelper {
 
         NotificationManager notificationManager = notificationManager();
         notificationManager.cancelAll();
+        inboxHistory.removeAll();
     }
 
     public void clearNotification(int notificationID) {
@@ -683,116 +776,62 @@ public class RNPushNotificationHelper {
 
         NotificationManager notificationManager = notificationManager();
         notificationManager.cancel(notificationID);
+        inboxHistory.remove(notificationID);
     }
 
     public void cancelAllScheduledNotifications() {
         Log.i(LOG_TAG, "Cancelling all notifications");
 
-        for (String id : scheduledNotificationsPersistence.getAll().keySet()) {
-            cancelScheduledNotification(id);
-        }
+        cancelScheduledNotifications(scheduledNotificationsPersistence.getIds());
     }
 
     public void cancelScheduledNotification(ReadableMap userInfo) {
-        for (String id : scheduledNotificationsPersistence.getAll().keySet()) {
-            try {
-                String notificationAttributesJson = scheduledNotificationsPersistence.getString(id, null);
-                if (notificationAttributesJson != null) {
-                    RNPushNotificationAttributes notificationAttributes = fromJson(notificationAttributesJson);
-                    if (notificationAttributes.matches(userInfo)) {
-                        cancelScheduledNotification(id);
-                    }
-                }
-            } catch (JSONException e) {
-                Log.w(LOG_TAG, "Problem dealing with scheduled notification " + id, e);
-            }
-        }
+        cancelScheduledNotifications(scheduledNotificationsPersistence.findMatching(userInfo));
     }
 
-    private void cancelScheduledNotification(String notificationIDString) {
-        Log.i(LOG_TAG, "Cancelling notification: " + notificationIDString);
-
-        // remove it from the alarm manger schedule
-        Bundle b = new Bundle();
-        b.putString("id", notificationIDString);
-        getAlarmManager().cancel(toScheduleNotificationIntent(b));
-
-        if (scheduledNotificationsPersistence.contains(notificationIDString)) {
-            // remove it from local storage
-            SharedPreferences.Editor editor = scheduledNotificationsPersistence.edit();
-            editor.remove(notificationIDString);
-            commit(editor);
-        } else {
-            Log.w(LOG_TAG, "Unable to find notification " + notificationIDString);
+    /**
+     * Cancel the alarms and notifications of the given ids, and remove them from the store in
+     * one transaction. The single alarm scheduler is re-armed once, after all of them.
+     */
+    private void cancelScheduledNotifications(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
         }
 
-        // removed it from the notification center
-        NotificationManager notificationManager = notificationManager();
-
-        notificationManager.cancel(Integer.parseInt(notificationIDString));
-    }
-
-    private NotificationManager notificationManager() {
-        return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-    }
+        long start = RNPushNotificationMetrics.begin("cancelScheduled");
+        try {
+            Log.i(LOG_TAG, "Cancelling notifications: " + ids);
 
-    private static void commit(SharedPreferences.Editor editor) {
-        if (Build.VERSION.SDK_INT < 9) {
-            editor.commit();
-        } else {
-            editor.apply();
-        }
-    }
+            // remove them from the alarm manger schedule
+            AlarmManager alarmManager = getAlarmManager();
+            Bundle b = new Bundle();
+            for (String id : ids) {
+                b.putString("id", id);
+                alarmManager.cancel(toScheduleNotificationIntent(b));
+            }
 
-    private static boolean channelCreated = false;
-    private void checkOrCreateChannel(NotificationManager manager) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
-            return;
-        if (channelCreated)
-            return;
-        if (manager == null)
-            return;
+            // remove them from local storage
+            int removed = scheduledNotificationsPersistence.removeAll(ids);
+            if (removed < ids.size()) {
+                Log.w(LOG_TAG, "Unable to find " + (ids.size() - removed) + " of the notifications");
+            }
+            if (removed > 0 && config.isSingleAlarmScheduler()) {
+                rearmScheduler();
+            }
 
-        Bundle bundle = new Bundle();
-
-        int importance = NotificationManager.IMPORTANCE_HIGH;
-        final String importanceString = bundle.getString("importance");
-
-        if (importanceString != null) {
-            switch(importanceString.toLowerCase()) {
-                case "default":
-                    importance = NotificationManager.IMPORTANCE_DEFAULT;
-                    break;
-                case "max":
-                    importance = NotificationManager.IMPORTANCE_MAX;
-                    break;
-                case "high":
-                    importance = NotificationManager.IMPORTANCE_HIGH;
-                    break;
-                case "low":
-                    importance = NotificationManager.IMPORTANCE_LOW;
-                    break;
-                case "min":
-                    importance = NotificationManager.IMPORTANCE_MIN;
-                    break;
-                case "none":
-                    importance = NotificationManager.IMPORTANCE_NONE;
-                    break;
-                case "unspecified":
-                    importance = NotificationManager.IMPORTANCE_UNSPECIFIED;
-                    break;
-                default:
-                    importance = NotificationManager.IMPORTANCE_HIGH;
+            // remove them from the notification center
+            NotificationManager notificationManager = notificationManager();
+            for (String id : ids) {
+                int notId = Integer.parseInt(id);
+                notificationManager.cancel(notId);
+                inboxHistory.remove(notId);
             }
+        } finally {
+            RNPushNotificationMetrics.end("cancelScheduled", start);
         }
+    }
 
-        NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID, this.config.getChannelName() != null ? this.config.getChannelName() : "rn-push-notification-channel", importance);
-
-        channel.setDescription(this.config.getChannelDescription());
-        channel.enableLights(true);
-        channel.enableVibration(true);
-
-        manager.createNotificationChannel(channel);
-        channelCreated = true;
+    private NotificationManager notificationManager() {
+        return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
     }
 }
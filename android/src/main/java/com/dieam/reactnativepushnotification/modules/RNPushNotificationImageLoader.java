@@ -0,0 +1,337 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Loads the bitmaps of notifications: large icons and big pictures.
+ * <p>
+ * Images are decoded bounds first and downsampled to the size they are displayed at, then kept
+ * in a memory LRU keyed by source. Remote images are also kept in a disk cache, and fetched
+ * within a strict time budget, from name resolution to the last byte, so a slow server or DNS
+ * cannot hold the notification back for long.
+ */
+public class RNPushNotificationImageLoader {
+    private static final String DISK_CACHE_DIR = "rn_push_notification_images";
+    private static final long DISK_CACHE_MAX_BYTES = 10 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int FETCH_THREADS = 4;
+
+    private static RNPushNotificationImageLoader instance;
+
+    private final Resources resources;
+    private final File diskCacheDir;
+    private final int fetchBudgetMillis;
+    private final LruCache<String, Bitmap> memoryCache;
+    // Runs the downloads, so they can be given up on at the deadline, no queue as a fetch that
+    // cannot start right away would not make its budget anyway
+    private final ThreadPoolExecutor fetchExecutor = new ThreadPoolExecutor(0, FETCH_THREADS,
+            30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "RNPushNotificationImageFetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    public static synchronized RNPushNotificationImageLoader getInstance(Context context) {
+        if (instance == null) {
+            Context applicationContext = context.getApplicationContext();
+            RNPushNotificationConfig config = new RNPushNotificationConfig(applicationContext);
+            instance = new RNPushNotificationImageLoader(applicationContext, config.getImageFetchTimeout());
+        }
+        return instance;
+    }
+
+    RNPushNotificationImageLoader(Context context, int fetchBudgetMillis) {
+        this.resources = context.getResources();
+        this.diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        this.fetchBudgetMillis = fetchBudgetMillis;
+
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+        this.memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public int getLargeIconWidth() {
+        return resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+    }
+
+    public int getLargeIconHeight() {
+        return resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+    }
+
+    /**
+     * @return a large icon sized bitmap of the resource, or null
+     */
+    public Bitmap loadLargeIcon(int resId) {
+        String key = "res:" + resId + "@" + getLargeIconWidth() + "x" + getLargeIconHeight();
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        options.inSampleSize = calculateInSampleSize(options, getLargeIconWidth(), getLargeIconHeight());
+        options.inJustDecodeBounds = false;
+
+        bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        if (bitmap != null) {
+            memoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return a large icon sized bitmap of the remote image, or null
+     */
+    public Bitmap loadLargeIcon(String url) {
+        return loadUrl(url, getLargeIconWidth(), getLargeIconHeight());
+    }
+
+    /**
+     * @return a bitmap of the remote image, sized for the width of the screen, or null
+     */
+    public Bitmap loadBigPicture(String url) {
+        int width = resources.getDisplayMetrics().widthPixels;
+        // Big pictures are displayed at about 2:1
+        return loadUrl(url, width, width / 2);
+    }
+
+    /**
+     * @return the image at the url downsampled to about the requested size, or null if it could
+     * not be fetched or decoded within the time budget
+     */
+    public Bitmap loadUrl(String url, int reqWidth, int reqHeight) {
+        String key = url + "@" + reqWidth + "x" + reqHeight;
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        File file = new File(diskCacheDir, hash(url));
+        if (!file.exists() && !fetch(url, file)) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+
+        bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            Log.w(LOG_TAG, "Unable to decode image " + url);
+            file.delete();
+            return null;
+        }
+        memoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Fetch the url into the file, all of it within the time budget, name resolution included.
+     * The download runs on a worker so the caller gets its answer once the budget is spent even
+     * where no socket timeout applies; a worker left stuck resolving the name only takes up one
+     * of the few fetch threads.
+     */
+    boolean fetch(String url, File file) {
+        Fetch fetch = new Fetch(url, file, SystemClock.elapsedRealtime() + fetchBudgetMillis);
+        Future<Boolean> result;
+        try {
+            result = fetchExecutor.submit(fetch);
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, "Unable to fetch image " + url + ", all fetch threads are busy");
+            return false;
+        }
+
+        try {
+            return result.get(fetchBudgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(LOG_TAG, "Fetching image " + url + " took longer than " + fetchBudgetMillis + " ms");
+        } catch (ExecutionException e) {
+            Log.w(LOG_TAG, "Unable to fetch image " + url, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        fetch.cancel();
+        result.cancel(true);
+        return false;
+    }
+
+    private class Fetch implements Callable<Boolean> {
+        private final String url;
+        private final File file;
+        private final long deadline;
+        private volatile HttpURLConnection connection;
+        private volatile boolean cancelled;
+
+        Fetch(String url, File file, long deadline) {
+            this.url = url;
+            this.file = file;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Abort the download, from the caller once it gave up on it.
+         */
+        void cancel() {
+            cancelled = true;
+            HttpURLConnection connection = this.connection;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        public Boolean call() throws IOException {
+            if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+                Log.w(LOG_TAG, "Unable to create " + diskCacheDir);
+                return false;
+            }
+
+            // Of its own, as a fetch given up on may still be writing
+            File tmp = File.createTempFile(file.getName(), ".tmp", diskCacheDir);
+            try {
+                connection = (HttpURLConnection) new URL(url).openConnection();
+                if (cancelled) {
+                    return false;
+                }
+                connection.setConnectTimeout(remaining());
+                connection.setReadTimeout(remaining());
+                connection.setInstanceFollowRedirects(true);
+
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    Log.w(LOG_TAG, "Unable to fetch image " + url + ": HTTP " + connection.getResponseCode());
+                    return false;
+                }
+
+                InputStream input = connection.getInputStream();
+                OutputStream output = new FileOutputStream(tmp);
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, read);
+                        if (cancelled) {
+                            return false;
+                        }
+                        connection.setReadTimeout(remaining());
+                    }
+                } finally {
+                    output.close();
+                    input.close();
+                }
+
+                if (cancelled || !tmp.renameTo(file)) {
+                    return false;
+                }
+                trimDiskCache();
+                return true;
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                tmp.delete();
+            }
+        }
+
+        /**
+         * @return what is left of the budget, at least 1 ms as 0 means no timeout
+         */
+        private int remaining() {
+            return (int) Math.max(1, deadline - SystemClock.elapsedRealtime());
+        }
+    }
+
+    private void trimDiskCache() {
+        File[] files = diskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= DISK_CACHE_MAX_BYTES) {
+            return;
+        }
+
+        // Least recently used first
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (size <= DISK_CACHE_MAX_BYTES) {
+                break;
+            }
+            size -= file.length();
+            file.delete();
+        }
+    }
+
+    private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        // Largest power of two keeping both dimensions at least as big as requested
+        while (options.outWidth / (inSampleSize * 2) >= reqWidth && options.outHeight / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static String hash(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.core.util.AtomicFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Message history of inbox style notifications, and the count behind incrementBadge.
+ * <p>
+ * Each notification id keeps its latest {@link #MAX_LINES} lines, which is what InboxStyle shows,
+ * and the total number of messages it got. Every id is persisted in its own small file, read
+ * the first time that id is used again, so history survives the process without loading all of
+ * it at startup.
+ * <p>
+ * An id's history goes with its notification when that is cleared or cancelled. Those the user
+ * dismisses are never heard of, so only the {@link #MAX_IDS} most recently used ids are kept,
+ * in memory and on disk.
+ */
+public class RNPushNotificationInboxHistory {
+    static final int MAX_LINES = 5;
+    static final int MAX_IDS = 50;
+
+    private static final String DIR = "rn_push_notification_inbox";
+    private static final String BADGE_FILE = "badge";
+    private static final int VERSION = 1;
+
+    private static RNPushNotificationInboxHistory instance;
+
+    private final File dir;
+    // In access order, the least recently used id goes first past MAX_IDS, its file stays
+    private final Map<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > MAX_IDS;
+        }
+    };
+    private int badgeCount = -1;
+
+    public static synchronized RNPushNotificationInboxHistory getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationInboxHistory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RNPushNotificationInboxHistory(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR);
+    }
+
+    /**
+     * Add a message to the history of a notification, an empty message clears it.
+     */
+    public synchronized void add(int notId, String message) {
+        Entry entry = getEntry(notId);
+        boolean created = entry.total == 0;
+        if (message.isEmpty()) {
+            entry.total = 0;
+            entry.lines.clear();
+        } else {
+            entry.total++;
+            entry.lines.addLast(message);
+            if (entry.lines.size() > MAX_LINES) {
+                entry.lines.removeFirst();
+            }
+        }
+        writeEntry(notId, entry);
+        if (created && entry.total > 0) {
+            pruneFiles(notId);
+        }
+    }
+
+    /**
+     * Forget the history of a notification, as it was cleared or cancelled.
+     */
+    public synchronized void remove(int notId) {
+        entries.remove(notId);
+        new AtomicFile(new File(dir, String.valueOf(notId))).delete();
+    }
+
+    /**
+     * Forget the history of every notification, keeping the badge count.
+     */
+    public synchronized void removeAll() {
+        entries.clear();
+        for (File file : listEntryFiles()) {
+            new AtomicFile(file).delete();
+        }
+    }
+
+    /**
+     * @return the latest lines of the notification, newest first
+     */
+    public synchronized List<String> getLines(int notId) {
+        List<String> lines = new ArrayList<>(MAX_LINES);
+        Iterator<String> iterator = getEntry(notId).lines.descendingIterator();
+        while (iterator.hasNext()) {
+            lines.add(iterator.next());
+        }
+        return lines;
+    }
+
+    /**
+     * @return how many messages the notification got, including those no longer kept
+     */
+    public synchronized int getCount(int notId) {
+        return getEntry(notId).total;
+    }
+
+    public synchronized int getBadgeCount() {
+        if (badgeCount < 0) {
+            badgeCount = 0;
+            try {
+                DataInputStream input = new DataInputStream(new ByteArrayInputStream(new AtomicFile(new File(dir, BADGE_FILE)).readFully()));
+                if (input.readInt() == VERSION) {
+                    badgeCount = input.readInt();
+                }
+            } catch (FileNotFoundException e) {
+                // Never set
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to read the badge count", e);
+            }
+        }
+        return badgeCount;
+    }
+
+    public synchronized int incrementBadgeCount() {
+        setBadgeCount(getBadgeCount() + 1);
+        return badgeCount;
+    }
+
+    public synchronized void setBadgeCount(int count) {
+        badgeCount = count;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(VERSION);
+            output.writeInt(count);
+            write(BADGE_FILE, bytes.toByteArray());
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to persist the badge count", e);
+        }
+    }
+
+    /**
+     * Forget the history of every notification, and reset the badge count.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        badgeCount = 0;
+    }
+
+    // Only the newest MAX_IDS files are kept, by when they were last written, and always notId's
+    private void pruneFiles(int notId) {
+        final String kept = String.valueOf(notId);
+        File[] files = listEntryFiles();
+        if (files.length <= MAX_IDS) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                if (a.getName().equals(kept) != b.getName().equals(kept)) {
+                    return a.getName().equals(kept) ? -1 : 1;
+                }
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+        for (int i = MAX_IDS; i < files.length; i++) {
+            new AtomicFile(files[i]).delete();
+            entries.remove(Integer.valueOf(files[i].getName()));
+        }
+    }
+
+    private File[] listEntryFiles() {
+        File[] files = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().matches("-?\\d+");
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    private Entry getEntry(int notId) {
+        Entry entry = entries.get(notId);
+        if (entry == null) {
+            entry = readEntry(notId);
+            entries.put(notId, entry);
+        }
+        return entry;
+    }
+
+    private Entry readEntry(int notId) {
+        Entry entry = new Entry();
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(new AtomicFile(new File(dir, String.valueOf(notId))).readFully()));
+            if (input.readInt() != VERSION) {
+                return entry;
+            }
+            entry.total = input.readInt();
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                entry.lines.addLast(input.readUTF());
+            }
+        } catch (FileNotFoundException e) {
+            // No history yet
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read the history of notification " + notId, e);
+            entry = new Entry();
+        }
+        return entry;
+    }
+
+    private void writeEntry(int notId, Entry entry) {
+        if (entry.total == 0) {
+            new AtomicFile(new File(dir, String.valueOf(notId))).delete();
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(VERSION);
+            output.writeInt(entry.total);
+            output.writeInt(entry.lines.size());
+            for (String line : entry.lines) {
+                output.writeUTF(line);
+            }
+            write(String.valueOf(notId), bytes.toByteArray());
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to persist the history of notification " + notId, e);
+        }
+    }
+
+    private void write(String name, byte[] bytes) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        AtomicFile file = new AtomicFile(new File(dir, name));
+        FileOutputStream output = file.startWrite();
+        try {
+            output.write(bytes);
+            file.finishWrite(output);
+        } catch (IOException e) {
+            file.failWrite(output);
+            throw e;
+        }
+    }
+
+    private static class Entry {
+        int total;
+        final ArrayDeque<String> lines = new ArrayDeque<>(MAX_LINES + 1);
+    }
+}
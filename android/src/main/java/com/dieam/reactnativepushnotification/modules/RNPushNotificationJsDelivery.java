@@ -5,13 +5,15 @@ import android.os.Bundle;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Set;
+import java.lang.reflect.Array;
+import java.util.List;
 
 /**
  * Created by lambert on 2016/10/09.
@@ -19,42 +21,74 @@ import java.util.Set;
 
 public class RNPushNotificationJsDelivery {
     private ReactApplicationContext mReactContext;
+    private final boolean mNativeMapDelivery;
+    private final RNPushNotificationPendingEvents mPendingEvents;
 
     public RNPushNotificationJsDelivery(ReactApplicationContext reactContext) {
         mReactContext = reactContext;
+        mNativeMapDelivery = new RNPushNotificationConfig(reactContext).isNativeMapDelivery();
+        mPendingEvents = RNPushNotificationPendingEvents.getInstance(reactContext);
     }
 
     void sendEvent(String eventName, Object params) {
-        if (mReactContext.hasActiveCatalystInstance()) {
+        // Under the queue's lock, so an event can't overtake the ones being replayed
+        synchronized (mPendingEvents) {
+            if (mReactContext.hasActiveCatalystInstance() && mPendingEvents.getDepth() == 0) {
+                mReactContext
+                        .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                        .emit(eventName, params);
+            } else {
+                // Kept until JS asks for them, see replayPendingEvents. Events sent while older
+                // ones are still pending queue behind them, so JS gets them all in order.
+                mPendingEvents.add(eventName, params);
+            }
+        }
+    }
+
+    /**
+     * Send the events queued while the React instance was not active, in order, as a single
+     * remoteNotificationsBatch event.
+     */
+    void replayPendingEvents() {
+        synchronized (mPendingEvents) {
+            if (!mReactContext.hasActiveCatalystInstance() || mPendingEvents.getDepth() == 0) {
+                return;
+            }
             mReactContext
                     .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit(eventName, params);
+                    .emit("remoteNotificationsBatch", mPendingEvents.drain());
         }
     }
 
     void notifyRemoteFetch(Bundle bundle) {
-        String bundleString = convertJSON(bundle);
-        WritableMap params = Arguments.createMap();
-        params.putString("dataJSON", bundleString);
-        sendEvent("remoteFetch", params);
+        sendEvent("remoteFetch", toEventParams(bundle));
     }
 
     void notifyNotification(Bundle bundle) {
-        String bundleString = convertJSON(bundle);
-
-        WritableMap params = Arguments.createMap();
-        params.putString("dataJSON", bundleString);
-
-        sendEvent("remoteNotificationReceived", params);
+        long start = RNPushNotificationMetrics.begin("notifyNotification");
+        try {
+            sendEvent("remoteNotificationReceived", toEventParams(bundle));
+        } finally {
+            RNPushNotificationMetrics.end("notifyNotification", start);
+        }
     }
 
     void notifyNotificationAction(Bundle bundle) {
-        String bundleString = convertJSON(bundle);
+        sendEvent("notificationActionReceived", toEventParams(bundle));
+    }
 
+    /**
+     * Event payload for a notification: the bundle as a native map under "data" when
+     * native_map_delivery is enabled, otherwise the legacy JSON string under "dataJSON".
+     */
+    WritableMap toEventParams(Bundle bundle) {
         WritableMap params = Arguments.createMap();
-        params.putString("dataJSON", bundleString);
-
-        sendEvent("notificationActionReceived", params);
+        if (mNativeMapDelivery) {
+            params.putMap("data", convertWritableMap(bundle));
+        } else {
+            params.putString("dataJSON", convertJSON(bundle));
+        }
+        return params;
     }
 
     String convertJSON(Bundle bundle) {
@@ -65,22 +99,68 @@ public class RNPushNotificationJsDelivery {
             return null;
         }
     }
-    
-    // a Bundle is not a map, so we have to convert it explicitly
+
     JSONObject convertJSONObject(Bundle bundle) throws JSONException {
-        JSONObject json = new JSONObject();
-        Set<String> keys = bundle.keySet();
-        for (String key : keys) {
+        return RNPushNotificationBundleJson.toJSONObject(bundle, Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+    }
+
+    // same as convertJSONObject, straight into a map the bridge can carry without a JSON round trip
+    WritableMap convertWritableMap(Bundle bundle) {
+        WritableMap map = Arguments.createMap();
+        for (String key : bundle.keySet()) {
             Object value = bundle.get(key);
-            if (value instanceof Bundle) {
-                json.put(key, convertJSONObject((Bundle)value));
-            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                json.put(key, JSONObject.wrap(value));
+            if (value == null) {
+                map.putNull(key);
+            } else if (value instanceof Bundle) {
+                map.putMap(key, convertWritableMap((Bundle) value));
+            } else if (value instanceof String) {
+                map.putString(key, (String) value);
+            } else if (value instanceof Boolean) {
+                map.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Integer) {
+                map.putInt(key, (Integer) value);
+            } else if (value instanceof Number) {
+                map.putDouble(key, ((Number) value).doubleValue());
+            } else if (value instanceof List || value.getClass().isArray()) {
+                map.putArray(key, convertWritableArray(value));
             } else {
-                json.put(key, value);
+                map.putString(key, value.toString());
             }
         }
-        return json;
+        return map;
+    }
+
+    private WritableArray convertWritableArray(Object value) {
+        WritableArray array = Arguments.createArray();
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                pushValue(array, item);
+            }
+        } else {
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                pushValue(array, Array.get(value, i));
+            }
+        }
+        return array;
+    }
+
+    private void pushValue(WritableArray array, Object item) {
+        if (item == null) {
+            array.pushNull();
+        } else if (item instanceof Bundle) {
+            array.pushMap(convertWritableMap((Bundle) item));
+        } else if (item instanceof String) {
+            array.pushString((String) item);
+        } else if (item instanceof Boolean) {
+            array.pushBoolean((Boolean) item);
+        } else if (item instanceof Integer) {
+            array.pushInt((Integer) item);
+        } else if (item instanceof Number) {
+            array.pushDouble(((Number) item).doubleValue());
+        } else {
+            array.pushString(item.toString());
+        }
     }
 
 }
@@ -1,25 +1,19 @@
 package com.dieam.reactnativepushnotification.modules;
 
-import android.app.ActivityManager;
-import android.app.ActivityManager.RunningAppProcessInfo;
 import android.app.Application;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.dieam.reactnativepushnotification.helpers.ApplicationBadgeHelper;
-import com.facebook.react.ReactApplication;
-import com.facebook.react.ReactInstanceManager;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContext;
 import com.google.android.gms.gcm.GcmListenerService; 
 
 import org.json.JSONObject;
 
-import java.util.List;
 import java.util.Random;
 
 import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
@@ -28,6 +22,30 @@ public class RNPushNotificationListenerServiceGcm extends GcmListenerService {
 
     @Override
     public void onMessageReceived(String from, final Bundle bundle) { 
+        long receivedAt = SystemClock.elapsedRealtime();
+        RNPushNotificationDeferredWork.Task task;
+        long start = RNPushNotificationMetrics.begin("onMessageReceived");
+        try {
+            task = receive(bundle, receivedAt);
+        } finally {
+            RNPushNotificationMetrics.end("onMessageReceived", start);
+        }
+
+        // The process is only sure to be kept while this runs, so wait for as much of the push
+        // as the processing budget allows, the rest is deferred to a job
+        if (task != null) {
+            RNPushNotificationDeferredWork.getInstance(this).await(task);
+        }
+    }
+
+    private RNPushNotificationDeferredWork.Task receive(final Bundle bundle, long receivedAt) {
+        // Before anything else, a redelivered push skips every stage below
+        final String messageId = bundle.getString("google.message_id");
+        final RNPushNotificationDedupe dedupe = RNPushNotificationDedupe.getInstance(this);
+        if (dedupe.isDuplicate(messageId, bundle)) {
+            return null;
+        }
+
         JSONObject data = getPushData(bundle.getString("data"));
         // Copy `twi_body` to `message` to support Twilio
         if (bundle.containsKey("twi_body")) {
@@ -35,6 +53,7 @@ public class RNPushNotificationListenerServiceGcm extends GcmListenerService {
         }
 
         // TIP: it seems that "data" always is null (in our case with GCM) so nothing to do here
+        int badge = -1;
         if (data != null) {
             if (!bundle.containsKey("message")) {
                 bundle.putString("message", data.optString("alert", null));
@@ -49,104 +68,104 @@ public class RNPushNotificationListenerServiceGcm extends GcmListenerService {
                 bundle.putString("color", data.optString("color", null));
             }
 
-            final int badge = data.optInt("badge", -1);
-            if (badge >= 0) {
-                ApplicationBadgeHelper.INSTANCE.setApplicationIconBadgeNumber(this, badge);
-            }
+            badge = data.optInt("badge", -1);
         }
 
+        // If notification ID is not provided by the user for push notification, generate one at random
+        if (bundle.getString("id") == null) {
+            Random randomNumberGenerator = new Random(System.currentTimeMillis());
+            bundle.putString("id", String.valueOf(randomNumberGenerator.nextInt()));
+        }
+
+        final boolean isForeground = isApplicationInForeground();
+        bundle.putBoolean("foreground", isForeground);
+        bundle.putBoolean("userInteraction", false);
+
         Log.v(LOG_TAG, "onMessageReceived: " + bundle);
 
+        final RNPushNotificationDeferredWork deferredWork = RNPushNotificationDeferredWork.getInstance(this);
+        final RNPushNotificationDeferredWork.Task task = deferredWork.newTask(bundle, badge, receivedAt, new Runnable() {
+            public void run() {
+                // Shown and stored, or deferred, a redelivery can be dropped from now on
+                dedupe.commit(messageId, bundle);
+            }
+        });
+
+        // The notification does not need React, so it is shown first, without waiting for it to
+        // start, and the stages that can wait follow if the budget allows. Rendering writes into
+        // the bundle (userInteraction, action) while JS delivery and deferral read it on other
+        // threads, so it gets a copy of its own.
+        final Bundle renderBundle = new Bundle(bundle);
+        final Application applicationContext = getApplication();
+        RNPushNotificationPipeline.getInstance(applicationContext).post(new Runnable() {
+            public void run() {
+                try {
+                    RNPushNotificationHelper pushNotificationHelper = RNPushNotificationEngine.getInstance(applicationContext).getHelper();
+                    if (!isForeground) {
+                        pushNotificationHelper.showNotification(renderBundle);
+                    }else{
+                        pushNotificationHelper.clearNotificationHistory(); // Clear history of all inbox type notifications
+                    }
+
+                    // Cancel noti or others notis with the same "id" passed in "cancel" field
+                    if (bundle.containsKey("cancel")) {
+                        NotificationManager notificationManager = (NotificationManager) applicationContext.getSystemService(Context.NOTIFICATION_SERVICE);
+                        notificationManager.cancel(Integer.parseInt(bundle.getString("cancel")));
+                    }
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "failed to send push notification", e);
+                } finally {
+                    task.finish(RNPushNotificationDeferredWork.STAGE_NOTIFY);
+                }
+                deferredWork.runStages(task);
+            }
+        });
+
         // We need to run this on the main thread, as the React code assumes that is true.
         // Namely, DevServerHelper constructs a Handler() without a Looper, which triggers:
         // "Can't create handler inside thread that has not called Looper.prepare()"
         Handler handler = new Handler(Looper.getMainLooper());
         handler.post(new Runnable() {
             public void run() {
-                // Construct and load our normal React JS code bundle
-                ReactInstanceManager mReactInstanceManager = ((ReactApplication) getApplication()).getReactNativeHost().getReactInstanceManager();
-                ReactContext context = mReactInstanceManager.getCurrentReactContext();
-                // If it's constructed, send a notification
-                if (context != null) {
-                    handleRemotePushNotification((ReactApplicationContext) context, bundle);
-                } else {
-                    // Otherwise wait for construction, then send the notification
-                    mReactInstanceManager.addReactInstanceEventListener(new ReactInstanceManager.ReactInstanceEventListener() {
-                        public void onReactContextInitialized(ReactContext context) {
-                            handleRemotePushNotification((ReactApplicationContext) context, bundle);
-                        }
-                    });
-                    if (!mReactInstanceManager.hasStartedCreatingInitialContext()) {
-                        // Construct it in the background
-                        mReactInstanceManager.createReactContextInBackground();
+                RNPushNotificationColdStart.getInstance(getApplication()).deliver(bundle, new RNPushNotificationColdStart.Delivery() {
+                    public void deliver(ReactApplicationContext context, Bundle bundle) {
+                        handleRemotePushNotification(context, bundle, task);
                     }
-                }
+                });
             }
         });
+        return task;
     }
 
     private JSONObject getPushData(String dataString) {
+        long start = RNPushNotificationMetrics.begin("getPushData");
         try {
             return new JSONObject(dataString);
         } catch (Exception e) {
             return null;
+        } finally {
+            RNPushNotificationMetrics.end("getPushData", start);
         }
     }
 
-    private void handleRemotePushNotification(ReactApplicationContext context, Bundle bundle) {
-
-        // If notification ID is not provided by the user for push notification, generate one at random
-        if (bundle.getString("id") == null) {
-            Random randomNumberGenerator = new Random(System.currentTimeMillis());
-            bundle.putString("id", String.valueOf(randomNumberGenerator.nextInt()));
-        }
-
-        Boolean isForeground = isApplicationInForeground();
-
-        RNPushNotificationJsDelivery jsDelivery = new RNPushNotificationJsDelivery(context);
-        bundle.putBoolean("foreground", isForeground);
-        bundle.putBoolean("userInteraction", false);
-        jsDelivery.notifyNotification(bundle);
+    private void handleRemotePushNotification(ReactApplicationContext context, Bundle bundle, RNPushNotificationDeferredWork.Task task) {
+        long start = RNPushNotificationMetrics.begin("handleRemotePushNotification");
+        try {
+            RNPushNotificationJsDelivery jsDelivery = new RNPushNotificationJsDelivery(context);
+            jsDelivery.notifyNotification(bundle);
 
-        // If contentAvailable is set to true, then send out a remote fetch event
-        if (bundle.getString("contentAvailable", "false").equalsIgnoreCase("true")) {
-            jsDelivery.notifyRemoteFetch(bundle);
-        }
+            // If contentAvailable is set to true, then send out a remote fetch event, unless React
+            // took longer than the budget and the job has it
+            RNPushNotificationDeferredWork.getInstance(context).runRemoteFetch(task, jsDelivery);
 
-        // TIP: You can see this logs in logcat
-        Log.v(LOG_TAG, "handleRemotePushNotification: " + bundle);
-        // Log.v(LOG_TAG, "sendNotification budnle name: " + getApplication().getPackageName());
-        // Log.v(LOG_TAG, "sendNotification id: " + bundle.getString("id"));
-
-        Application applicationContext = (Application) context.getApplicationContext();
-        RNPushNotificationHelper pushNotificationHelper = new RNPushNotificationHelper(applicationContext);
-        if (!isForeground) {
-            pushNotificationHelper.sendToNotificationCentre(bundle);
-        }else{
-            pushNotificationHelper.clearNotificationHistory(); // Clear history of all inbox type notifications 
-        }
-        
-        // Cancel noti or others notis with the same "id" passed in "cancel" field
-        if (bundle.containsKey("cancel")) {
-            NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-            notificationManager.cancel(Integer.parseInt(bundle.getString("cancel")));
+            // TIP: You can see this logs in logcat
+            Log.v(LOG_TAG, "handleRemotePushNotification: " + bundle);
+        } finally {
+            RNPushNotificationMetrics.end("handleRemotePushNotification", start);
         }
     }
 
     private boolean isApplicationInForeground() {
-        ActivityManager activityManager = (ActivityManager) this.getSystemService(ACTIVITY_SERVICE);
-        List<RunningAppProcessInfo> processInfos = activityManager.getRunningAppProcesses();
-        if (processInfos != null) {
-            for (RunningAppProcessInfo processInfo : processInfos) {
-                if (processInfo.processName.equals(getApplication().getPackageName())) {
-                    if (processInfo.importance == RunningAppProcessInfo.IMPORTANCE_FOREGROUND) {
-                        for (String d : processInfo.pkgList) {
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-        return false;
+        return RNPushNotificationForegroundTracker.getInstance(getApplication()).isForeground();
     }
 }
@@ -0,0 +1,135 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.os.Bundle;
+
+import java.util.Map;
+
+/**
+ * The userInfo of cancelLocalNotifications, compiled once so it can be checked against every
+ * scheduled notification without allocating.
+ * <p>
+ * A notification matches when it has every key of userInfo with an equal value. Numbers compare
+ * by value whatever their type, maps and arrays never match as bundles do not hold them.
+ * <p>
+ * Stored notifications are checked in their encoded form, see
+ * {@link RNPushNotificationBundleCodec#matches(byte[], RNPushNotificationMatcher)}.
+ * <p>
+ * Only depends on Bundle, so the benchmarks in android/benchmark can run it on a plain JVM.
+ */
+public class RNPushNotificationMatcher {
+    static final int KIND_NULL = 0;
+    static final int KIND_NUMBER = 1;
+    static final int KIND_EQUAL = 2;
+    static final int KIND_NEVER = 3;
+
+    private final String[] keys;
+    private final int[] kinds;
+    private final Object[] values;
+    private final double[] numbers;
+
+    private RNPushNotificationMatcher(int size) {
+        keys = new String[size];
+        kinds = new int[size];
+        values = new Object[size];
+        numbers = new double[size];
+    }
+
+    /**
+     * @param userInfo map of fields to match, as given by ReadableMap.toHashMap()
+     */
+    public static RNPushNotificationMatcher compile(Map<String, Object> userInfo) {
+        RNPushNotificationMatcher matcher = new RNPushNotificationMatcher(userInfo.size());
+        int i = 0;
+        for (Map.Entry<String, Object> entry : userInfo.entrySet()) {
+            Object expected = entry.getValue();
+            matcher.keys[i] = entry.getKey();
+            matcher.values[i] = expected;
+            if (expected == null) {
+                matcher.kinds[i] = KIND_NULL;
+            } else if (expected instanceof Number) {
+                matcher.kinds[i] = KIND_NUMBER;
+                matcher.numbers[i] = ((Number) expected).doubleValue();
+            } else if (expected instanceof Boolean || expected instanceof String) {
+                matcher.kinds[i] = KIND_EQUAL;
+            } else {
+                matcher.kinds[i] = KIND_NEVER;
+            }
+            i++;
+        }
+        return matcher;
+    }
+
+    public boolean matches(Bundle bundle) {
+        for (int i = 0; i < keys.length; i++) {
+            if (kinds[i] == KIND_NEVER || !bundle.containsKey(keys[i])) {
+                return false;
+            }
+
+            Object value = bundle.get(keys[i]);
+            switch (kinds[i]) {
+                case KIND_NULL:
+                    if (value != null) {
+                        return false;
+                    }
+                    break;
+                case KIND_NUMBER:
+                    if (!(value instanceof Number) || ((Number) value).doubleValue() != numbers[i]) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (!values[i].equals(value)) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the string a key has to equal, or null if it is not matched against a string
+     */
+    public String getString(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return values[i] instanceof String ? (String) values[i] : null;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return the index of the key, -1 if it is not matched
+     */
+    int indexOf(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    int getKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * @return the String or Boolean the key has to equal, for {@link #KIND_EQUAL}
+     */
+    Object getValue(int index) {
+        return values[index];
+    }
+
+    double getNumber(int index) {
+        return numbers[index];
+    }
+}
@@ -0,0 +1,84 @@
+package com.dieam.reactnativepushnotification.modules;
+
+/**
+ * A chat message received through a push notification, parsed from its "payload" field, see
+ * {@link RNPushNotificationPayload}.
+ */
+public class RNPushNotificationMessage {
+    private final String id;
+    private final String contactId;
+    private final String text;
+    private final String image;
+    private final String audio;
+    private final String correct;
+    private final long created;
+
+    public RNPushNotificationMessage(String id, String contactId, String text, String image, String audio, String correct, long created) {
+        this.id = id;
+        this.contactId = contactId;
+        this.text = text;
+        this.image = image;
+        this.audio = audio;
+        this.correct = correct;
+        this.created = created;
+    }
+
+    /**
+     * @param created when the message was sent, in milliseconds since the epoch
+     * @return null unless the payload is a chat message with an id
+     */
+    static RNPushNotificationMessage fromPayload(RNPushNotificationPayload payload, long created) {
+        if (!payload.isMessage() || payload.getMessageId().equals("")) {
+            return null;
+        }
+        // TODO add "audio duration"
+        return new RNPushNotificationMessage(payload.getMessageId(), payload.getContactId(),
+                payload.getText(), payload.getImage(), payload.getAudio(), payload.getCorrect(), created);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the server id of the contact the message belongs to
+     */
+    public String getContactId() {
+        return contactId;
+    }
+
+    /**
+     * @return the text, empty for image, audio and correction messages
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the url of the image, empty unless this is an image message
+     */
+    public String getImage() {
+        return image;
+    }
+
+    /**
+     * @return the url of the recording, empty unless this is an audio message
+     */
+    public String getAudio() {
+        return audio;
+    }
+
+    /**
+     * @return the corrected text, empty unless this is a correction
+     */
+    public String getCorrect() {
+        return correct;
+    }
+
+    /**
+     * @return when the message was sent, in milliseconds since the epoch
+     */
+    public long getCreated() {
+        return created;
+    }
+}
@@ -0,0 +1,225 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Hands the chat messages received through push notifications to the registered
+ * {@link RNPushNotificationMessageSink}s, in batches and on a thread of its own, so neither
+ * parsing nor storing them delays showing the notification.
+ * <p>
+ * A batch is flushed once no new message arrived for {@link #FLUSH_IDLE_MS}, when it reaches
+ * {@link #FLUSH_MAX_BATCH} messages, or at the latest when its oldest message has waited for
+ * the flush deadline, {@code message_sink_flush_deadline} in the manifest, and right away when
+ * a caller waits for its message to be stored. The WatermelonDB
+ * writer is registered by default, unless {@code watermelon_sink} is false.
+ */
+public class RNPushNotificationMessageDispatcher {
+    private static final long FLUSH_IDLE_MS = 200;
+    private static final int FLUSH_MAX_BATCH = 50;
+
+    private static RNPushNotificationMessageDispatcher instance;
+
+    private final Handler handler;
+    private final long flushDeadline;
+    private final List<RNPushNotificationMessageSink> sinks = new CopyOnWriteArrayList<>();
+    private final List<Pending> pending = new ArrayList<>();
+    private long firstPendingAt;
+
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    private volatile long batchCount;
+    private volatile long messageCount;
+    private volatile long failedCount;
+
+    private final Runnable flushRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    public static synchronized RNPushNotificationMessageDispatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationMessageDispatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the dispatcher if a message was dispatched or a sink added, null otherwise, without
+     * starting its thread
+     */
+    static synchronized RNPushNotificationMessageDispatcher peekInstance() {
+        return instance;
+    }
+
+    private RNPushNotificationMessageDispatcher(Context context) {
+        RNPushNotificationConfig config = new RNPushNotificationConfig(context);
+        this.flushDeadline = config.getMessageSinkFlushDeadline();
+
+        HandlerThread thread = new HandlerThread("RNPushNotificationMessageDispatcher");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+
+        if (config.isWatermelonSinkEnabled()) {
+            sinks.add(RNPushNotificationWatermelonWriter.getInstance(context));
+        }
+    }
+
+    public void addSink(RNPushNotificationMessageSink sink) {
+        if (!sinks.contains(sink)) {
+            sinks.add(sink);
+        }
+    }
+
+    public void removeSink(RNPushNotificationMessageSink sink) {
+        sinks.remove(sink);
+    }
+
+    public int getSinkCount() {
+        return sinks.size();
+    }
+
+    /**
+     * Queue the payload of a notification, it is read with the next batch, if no other stage
+     * read it already, and only passed on if it is a chat message.
+     *
+     * @param created when the notification was sent, in milliseconds since the epoch
+     */
+    public void dispatch(RNPushNotificationPayload payload, long created) {
+        dispatch(payload, created, null);
+    }
+
+    /**
+     * Same as {@link #dispatch(RNPushNotificationPayload, long)}, flushing right away rather than
+     * once the burst ends, as the caller is waiting for it.
+     *
+     * @param onFlushed run on the dispatcher thread once the sinks are done with the batch
+     *                  holding the payload, whether they stored it or failed, may be null
+     */
+    public void dispatch(RNPushNotificationPayload payload, long created, Runnable onFlushed) {
+        if (sinks.isEmpty()) {
+            if (onFlushed != null) {
+                onFlushed.run();
+            }
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        boolean flushNow;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                firstPendingAt = now;
+            }
+            pending.add(new Pending(payload, created, onFlushed));
+            flushNow = onFlushed != null || pending.size() >= FLUSH_MAX_BATCH;
+        }
+
+        handler.removeCallbacks(flushRunnable);
+        if (flushNow) {
+            handler.post(flushRunnable);
+        } else {
+            // Waiting for the burst to end, but not past the deadline of the oldest message
+            long deadline = firstPendingAt + flushDeadline;
+            handler.postAtTime(flushRunnable, Math.min(now + FLUSH_IDLE_MS, deadline));
+        }
+    }
+
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return how many times a sink threw on a batch
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    private void flush() {
+        List<Pending> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        long traceStart = RNPushNotificationMetrics.begin("messageSinks");
+        try {
+            List<RNPushNotificationMessage> messages = new ArrayList<>(batch.size());
+            for (Pending item : batch) {
+                if (item.payload.isMalformed()) {
+                    Log.w(LOG_TAG, "Unable to parse the payload of a notification");
+                    continue;
+                }
+                RNPushNotificationMessage message = RNPushNotificationMessage.fromPayload(item.payload, item.created);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            messages = Collections.unmodifiableList(messages);
+            for (RNPushNotificationMessageSink sink : sinks) {
+                try {
+                    sink.onMessages(messages);
+                } catch (Exception e) {
+                    failedCount++;
+                    Log.e(LOG_TAG, "Message sink " + sink.getClass().getName() + " failed on " + messages.size() + " messages", e);
+                }
+            }
+            batchCount++;
+            messageCount += messages.size();
+        } finally {
+            RNPushNotificationMetrics.end("messageSinks", traceStart);
+            for (Pending item : batch) {
+                if (item.onFlushed != null) {
+                    item.onFlushed.run();
+                }
+            }
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        lastFlushMillis = elapsed;
+        maxFlushMillis = Math.max(maxFlushMillis, elapsed);
+    }
+
+    private static class Pending {
+        final RNPushNotificationPayload payload;
+        final long created;
+        final Runnable onFlushed;
+
+        Pending(RNPushNotificationPayload payload, long created, Runnable onFlushed) {
+            this.payload = payload;
+            this.created = created;
+            this.onFlushed = onFlushed;
+        }
+    }
+}
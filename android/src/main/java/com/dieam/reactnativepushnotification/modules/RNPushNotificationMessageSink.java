@@ -0,0 +1,19 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import java.util.List;
+
+/**
+ * Receives the chat messages that arrive through push notifications, to store them wherever the
+ * app keeps its messages. Register one with
+ * {@link RNPushNotificationMessageDispatcher#addSink(RNPushNotificationMessageSink)}, typically
+ * from {@code Application.onCreate} so no message is missed when the app is started by a push.
+ */
+public interface RNPushNotificationMessageSink {
+    /**
+     * Called on the dispatcher thread, never the main thread, with the messages received since
+     * the previous call, oldest first. Write them in one go where possible, the next batch waits
+     * for this call to return. Throw if the batch could not be stored, the dispatcher logs it
+     * and counts it in {@link RNPushNotificationMessageDispatcher#getFailedCount()}.
+     */
+    void onMessages(List<RNPushNotificationMessage> messages);
+}
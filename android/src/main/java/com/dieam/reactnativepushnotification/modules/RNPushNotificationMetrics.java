@@ -0,0 +1,131 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.os.Bundle;
+
+import androidx.core.os.TraceCompat;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide timings of the notification pipeline, keyed by stage name.
+ * <p>
+ * Each stage keeps a histogram with power of two buckets in microseconds, which is cheap enough
+ * to record on every message and still gives usable percentiles. Stages timed with
+ * {@link #begin(String)} and {@link #end(String, long)} also show up as trace sections, prefixed
+ * with "RNPN:", in systrace and Perfetto captures.
+ */
+public class RNPushNotificationMetrics {
+    private static final String TRACE_PREFIX = "RNPN:";
+    private static final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private RNPushNotificationMetrics() {
+    }
+
+    /**
+     * Start timing a stage on the current thread. Must be followed by {@link #end(String, long)}
+     * on the same thread, in a finally block where the stage can throw.
+     *
+     * @return the start time to pass to end
+     */
+    public static long begin(String stage) {
+        TraceCompat.beginSection(TRACE_PREFIX + stage);
+        return System.nanoTime();
+    }
+
+    public static void end(String stage, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        TraceCompat.endSection();
+        getTimer(stage).record(elapsedNanos / 1000);
+    }
+
+    public static void recordTime(String stage, long millis) {
+        getTimer(stage).record(millis * 1000);
+    }
+
+    /**
+     * @return one bundle per stage with the count, then total, mean, max, last, and 50th, 90th
+     * and 99th percentile times in milliseconds
+     */
+    public static Bundle snapshot() {
+        Bundle snapshot = new Bundle();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            snapshot.putBundle(entry.getKey(), entry.getValue().toBundle());
+        }
+        return snapshot;
+    }
+
+    private static Timer getTimer(String stage) {
+        Timer timer = timers.get(stage);
+        if (timer == null) {
+            timers.putIfAbsent(stage, new Timer());
+            timer = timers.get(stage);
+        }
+        return timer;
+    }
+
+    private static class Timer {
+        // Bucket i counts times in [2^(i-1), 2^i) microseconds, the last one everything above
+        private static final int BUCKETS = 32;
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+        private final AtomicLong lastMicros = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long micros) {
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            lastMicros.set(micros);
+            long max;
+            do {
+                max = maxMicros.get();
+            } while (micros > max && !maxMicros.compareAndSet(max, micros));
+
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(Math.max(micros, 0)), BUCKETS - 1);
+            buckets.incrementAndGet(bucket);
+        }
+
+        Bundle toBundle() {
+            long count = this.count.get();
+            Bundle bundle = new Bundle();
+            bundle.putLong("count", count);
+            bundle.putDouble("totalMillis", totalMicros.get() / 1000.0);
+            bundle.putDouble("meanMillis", count > 0 ? totalMicros.get() / 1000.0 / count : 0);
+            bundle.putDouble("maxMillis", maxMicros.get() / 1000.0);
+            bundle.putDouble("lastMillis", lastMicros.get() / 1000.0);
+            bundle.putDouble("p50Millis", percentile(0.50));
+            bundle.putDouble("p90Millis", percentile(0.90));
+            bundle.putDouble("p99Millis", percentile(0.99));
+            return bundle;
+        }
+
+        /**
+         * @return the upper bound of the bucket holding the percentile, capped at the max
+         */
+        private double percentile(double fraction) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(1L << i, maxMicros.get()) / 1000.0;
+                }
+            }
+            return maxMicros.get() / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.os.Bundle;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The app payload of a push, the JSON in its "payload" field.
+ * <p>
+ * A lazy view: nothing is parsed until a field is asked for, then the payload is read once, by
+ * a streaming reader that walks the string and skips whatever is not needed without building
+ * anything, and the formatted message fields are only read from rawText when asked for.
+ * {@link #of(Bundle)} hands out the same view for the same notification bundle, so the listener,
+ * renderer and persistence stages share one parse.
+ * <p>
+ * Only depends on Bundle, so the benchmarks in android/benchmark can run it on a plain JVM.
+ */
+public class RNPushNotificationPayload {
+    private static final String FORMATTED_MESSAGE_PREFIX = "formattedMessage=";
+
+    // Keyed by identity, Bundle does not override equals
+    private static final Map<Bundle, RNPushNotificationPayload> shared = new WeakHashMap<>();
+
+    private final String json;
+
+    // Written once by scan(), then published by the volatile write of scanned
+    private volatile boolean scanned;
+    private boolean malformed;
+    private String type = "";
+    private String contactId = "";
+    private String messageId = "";
+    private String rawText = "";
+
+    // Written once by scanFormatted(), then published by the volatile write of formattedScanned
+    private volatile boolean formattedScanned;
+    private String text = "";
+    private String image = "";
+    private String audio = "";
+    private String correct = "";
+
+    private RNPushNotificationPayload(String json) {
+        this.json = json;
+    }
+
+    public static RNPushNotificationPayload of(String json) {
+        return new RNPushNotificationPayload(json);
+    }
+
+    /**
+     * @return the view of the bundle's payload, the same one for every call with the same bundle
+     * and payload, or null if it has none
+     */
+    public static RNPushNotificationPayload of(Bundle bundle) {
+        String json = bundle.getString("payload");
+        if (json == null) {
+            return null;
+        }
+
+        synchronized (shared) {
+            RNPushNotificationPayload payload = shared.get(bundle);
+            if (payload == null || payload.json != json) {
+                payload = new RNPushNotificationPayload(json);
+                shared.put(bundle, payload);
+            }
+            return payload;
+        }
+    }
+
+    /**
+     * @return true for a chat message, which has a contact and possibly a message to store
+     */
+    public boolean isMessage() {
+        scan();
+        return type.equals("message");
+    }
+
+    /**
+     * @return true if the payload is not valid JSON, every field is empty then
+     */
+    public boolean isMalformed() {
+        scan();
+        return malformed;
+    }
+
+    public String getType() {
+        scan();
+        return type;
+    }
+
+    public String getContactId() {
+        return isMessage() ? contactId : "";
+    }
+
+    /**
+     * @return the id of the message, empty when the payload carries none
+     */
+    public String getMessageId() {
+        return isMessage() ? messageId : "";
+    }
+
+    public String getText() {
+        scanFormatted();
+        return text;
+    }
+
+    public String getImage() {
+        scanFormatted();
+        return image;
+    }
+
+    public String getAudio() {
+        scanFormatted();
+        return audio;
+    }
+
+    public String getCorrect() {
+        scanFormatted();
+        return correct;
+    }
+
+    /**
+     * Read type, entity.contact, entity.attributes.messageId and entity.attributes.rawText, once.
+     */
+    private void scan() {
+        if (!scanned) {
+            synchronized (this) {
+                if (!scanned) {
+                    read();
+                    scanned = true;
+                }
+            }
+        }
+    }
+
+    private void read() {
+        Reader reader = new Reader(json);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("type")) {
+                    type = reader.nextString();
+                } else if (name.equals("entity") && reader.peek() == '{') {
+                    readEntity(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IllegalStateException e) {
+            malformed = true;
+            type = "";
+            contactId = "";
+            messageId = "";
+            rawText = "";
+        }
+    }
+
+    private void readEntity(Reader reader) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("contact")) {
+                contactId = reader.nextString();
+            } else if (name.equals("attributes") && reader.peek() == '{') {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String attribute = reader.nextName();
+                    if (attribute.equals("messageId")) {
+                        messageId = reader.nextString();
+                    } else if (attribute.equals("rawText")) {
+                        rawText = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+    }
+
+    /**
+     * Split rawText into text, image, audio and correct, reading the formatted message it may
+     * hold, once.
+     */
+    private void scanFormatted() {
+        if (!formattedScanned) {
+            synchronized (this) {
+                if (!formattedScanned) {
+                    readFormatted();
+                    formattedScanned = true;
+                }
+            }
+        }
+    }
+
+    private void readFormatted() {
+        if (!isMessage()) {
+            return;
+        }
+        text = rawText;
+        if (!rawText.startsWith(FORMATTED_MESSAGE_PREFIX)) {
+            return;
+        }
+
+        String textType = "";
+        String source = "";
+        String data = "";
+        Reader reader = new Reader(rawText, FORMATTED_MESSAGE_PREFIX.length());
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("type")) {
+                    textType = reader.nextString();
+                } else if (name.equals("source")) {
+                    source = reader.nextString();
+                } else if (name.equals("data")) {
+                    data = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IllegalStateException e) {
+            // Not a formatted message after all, shown as it is
+            return;
+        }
+
+        if (textType.equals("image")) {
+            text = "";
+            image = source;
+        } else if (textType.equals("audio")) {
+            text = "";
+            audio = source;
+        } else if (textType.equals("correct")) {
+            text = "";
+            correct = data;
+        }
+    }
+
+    /**
+     * Just enough of a JSON reader for the payload: objects are entered and their members read
+     * one by one, everything else is either read as a string or skipped. Throws
+     * IllegalStateException on anything malformed.
+     */
+    private static class Reader {
+        private final String json;
+        private int position;
+        // Right after the { of an object, so no comma is expected
+        private boolean first;
+
+        Reader(String json) {
+            this(json, 0);
+        }
+
+        Reader(String json, int position) {
+            this.json = json;
+            this.position = position;
+        }
+
+        /**
+         * @return the next character that is not whitespace, without consuming it
+         */
+        char peek() {
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return c;
+                }
+                position++;
+            }
+            throw new IllegalStateException("Unexpected end of payload");
+        }
+
+        void beginObject() {
+            expect('{');
+            first = true;
+        }
+
+        /**
+         * @return true if the current object has another member, whose name is read next
+         */
+        boolean hasNext() {
+            char c = peek();
+            if (c == '}') {
+                position++;
+                first = false;
+                return false;
+            }
+            if (first) {
+                first = false;
+                return true;
+            }
+            if (c == ',') {
+                position++;
+                return true;
+            }
+            throw new IllegalStateException("Expected , or } at " + position);
+        }
+
+        String nextName() {
+            String name = readQuoted();
+            expect(':');
+            return name;
+        }
+
+        /**
+         * @return the value as a string: strings unescaped, numbers and booleans as written,
+         * null as an empty string
+         */
+        String nextString() {
+            char c = peek();
+            if (c == '"') {
+                return readQuoted();
+            }
+            if (c == '{' || c == '[') {
+                throw new IllegalStateException("Expected a value at " + position);
+            }
+            int start = position;
+            skipLiteral();
+            String literal = json.substring(start, position);
+            return literal.equals("null") ? "" : literal;
+        }
+
+        void skipValue() {
+            char c = peek();
+            if (c == '"') {
+                skipQuoted();
+            } else if (c == '{' || c == '[') {
+                // Strings aside, only the nesting matters
+                int depth = 0;
+                do {
+                    c = peek();
+                    if (c == '"') {
+                        skipQuoted();
+                        continue;
+                    }
+                    position++;
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                } while (depth > 0);
+            } else {
+                skipLiteral();
+            }
+        }
+
+        private void expect(char expected) {
+            if (peek() != expected) {
+                throw new IllegalStateException("Expected " + expected + " at " + position);
+            }
+            position++;
+        }
+
+        private void skipLiteral() {
+            int start = position;
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    break;
+                }
+                position++;
+            }
+            if (position == start) {
+                throw new IllegalStateException("Expected a value at " + position);
+            }
+        }
+
+        private void skipQuoted() {
+            expect('"');
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    position++;
+                }
+            }
+            throw new IllegalStateException("Unterminated string");
+        }
+
+        private String readQuoted() {
+            expect('"');
+            int start = position;
+            // Most strings have no escapes, and are a plain substring
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c == '"') {
+                    return json.substring(start, position++);
+                }
+                if (c == '\\') {
+                    break;
+                }
+                position++;
+            }
+
+            StringBuilder builder = new StringBuilder(position - start + 16);
+            int chunk = start;
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return builder.append(json, chunk, position - 1).toString();
+                }
+                if (c != '\\') {
+                    continue;
+                }
+                // Everything up to the backslash as it is, then what it escapes
+                builder.append(json, chunk, position - 1);
+                if (position >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw new IllegalStateException("Unterminated escape");
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalStateException("Invalid escape at " + position);
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        // \" \\ and \/
+                        builder.append(escaped);
+                }
+                chunk = position;
+            }
+            throw new IllegalStateException("Unterminated string");
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.core.util.AtomicFile;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Events that could not be sent to JS because the React instance was not active, during a
+ * reload or teardown for instance, and those that came after them until JS asked for them.
+ * <p>
+ * The queue is bounded, dropping the oldest events first, and persisted so events survive the
+ * process. JS asks for them once its listeners are in place, and gets them in order in a single
+ * remoteNotificationsBatch event.
+ */
+public class RNPushNotificationPendingEvents {
+    private static final String FILE_NAME = "rn_push_notification_pending_events.json";
+    private static final int CAPACITY = 100;
+
+    private static RNPushNotificationPendingEvents instance;
+
+    private final AtomicFile file;
+    private final RNPushNotificationPipeline pipeline;
+    private List<JSONObject> events;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+
+    private final Runnable persistRunnable = new Runnable() {
+        public void run() {
+            persist();
+        }
+    };
+
+    public static synchronized RNPushNotificationPendingEvents getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationPendingEvents(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the queue if an event was queued or replayed, null otherwise, without loading it
+     */
+    static synchronized RNPushNotificationPendingEvents peekInstance() {
+        return instance;
+    }
+
+    private RNPushNotificationPendingEvents(Context context) {
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        this.pipeline = RNPushNotificationPipeline.getInstance(context);
+    }
+
+    public void add(String eventName, Object params) {
+        JSONObject event = new JSONObject();
+        try {
+            event.put("eventName", eventName);
+            if (params instanceof ReadableMap) {
+                event.put("params", new JSONObject(((ReadableMap) params).toHashMap()));
+            }
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Dropping undeliverable event " + eventName, e);
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        synchronized (this) {
+            load();
+            events.add(event);
+            queuedCount.incrementAndGet();
+            while (events.size() > CAPACITY) {
+                events.remove(0);
+                droppedCount.incrementAndGet();
+            }
+        }
+        pipeline.post(persistRunnable);
+    }
+
+    /**
+     * Remove all pending events.
+     *
+     * @return the events as an array of {eventName, params} maps, oldest first
+     */
+    public WritableArray drain() {
+        List<JSONObject> drained;
+        synchronized (this) {
+            load();
+            drained = events;
+            events = new ArrayList<>();
+        }
+        if (!drained.isEmpty()) {
+            pipeline.post(persistRunnable);
+        }
+
+        WritableArray batch = Arguments.createArray();
+        for (JSONObject event : drained) {
+            WritableMap map = Arguments.createMap();
+            map.putString("eventName", event.optString("eventName"));
+            JSONObject params = event.optJSONObject("params");
+            if (params != null) {
+                map.putMap("params", convertWritableMap(params));
+            }
+            batch.pushMap(map);
+        }
+        replayedCount.addAndGet(drained.size());
+        return batch;
+    }
+
+    public synchronized int getDepth() {
+        load();
+        return events.size();
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    private void load() {
+        if (events != null) {
+            return;
+        }
+        events = new ArrayList<>();
+        try {
+            JSONArray stored = new JSONArray(new String(file.readFully(), "UTF-8"));
+            for (int i = 0; i < stored.length(); i++) {
+                events.add(stored.getJSONObject(i));
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing pending
+        } catch (IOException | JSONException e) {
+            Log.w(LOG_TAG, "Unable to read pending events, dropping them", e);
+        }
+    }
+
+    private void persist() {
+        String json;
+        synchronized (this) {
+            json = new JSONArray(events).toString();
+        }
+
+        FileOutputStream output = null;
+        try {
+            output = file.startWrite();
+            output.write(json.getBytes("UTF-8"));
+            file.finishWrite(output);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to persist pending events", e);
+            if (output != null) {
+                file.failWrite(output);
+            }
+        }
+    }
+
+    private static WritableMap convertWritableMap(JSONObject json) {
+        WritableMap map = Arguments.createMap();
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.opt(key);
+            if (value instanceof JSONObject) {
+                map.putMap(key, convertWritableMap((JSONObject) value));
+            } else if (value instanceof JSONArray) {
+                map.putArray(key, convertWritableArray((JSONArray) value));
+            } else if (value instanceof String) {
+                map.putString(key, (String) value);
+            } else if (value instanceof Boolean) {
+                map.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Integer) {
+                map.putInt(key, (Integer) value);
+            } else if (value instanceof Number) {
+                map.putDouble(key, ((Number) value).doubleValue());
+            } else {
+                map.putNull(key);
+            }
+        }
+        return map;
+    }
+
+    private static WritableArray convertWritableArray(JSONArray json) {
+        WritableArray array = Arguments.createArray();
+        for (int i = 0; i < json.length(); i++) {
+            Object value = json.opt(i);
+            if (value instanceof JSONObject) {
+                array.pushMap(convertWritableMap((JSONObject) value));
+            } else if (value instanceof JSONArray) {
+                array.pushArray(convertWritableArray((JSONArray) value));
+            } else if (value instanceof String) {
+                array.pushString((String) value);
+            } else if (value instanceof Boolean) {
+                array.pushBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                array.pushInt((Integer) value);
+            } else if (value instanceof Number) {
+                array.pushDouble(((Number) value).doubleValue());
+            } else {
+                array.pushNull();
+            }
+        }
+        return array;
+    }
+}
@@ -0,0 +1,196 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * Background pipeline for the notification stages that do not need React: rendering, bitmap
+ * decoding, preferences and database writes.
+ * <p>
+ * Work runs in order on a dedicated {@link HandlerThread}. The queue depth is bounded by
+ * {@code com.dieam.reactnativepushnotification.pipeline_queue_capacity} (256 by default). Once it
+ * is full, background producers block until there is room, so a burst slows them down rather
+ * than losing notifications. Work posted from the pipeline thread itself runs inline, as waiting
+ * would never end. Work posted from the main thread, such as a fired alarm or the boot
+ * reschedule, is queued past the limit, as it must neither block nor do the work itself, and
+ * dropping it would lose scheduled notifications; both count as overflow.
+ */
+public class RNPushNotificationPipeline {
+    private static RNPushNotificationPipeline instance;
+
+    private final Handler handler;
+    private final int capacity;
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Notified when the queue has room again, for the producers waiting for it
+    private final Object room = new Object();
+    // Producers waiting for room, guarded by room
+    private volatile int waiting;
+
+    public static synchronized RNPushNotificationPipeline getInstance(Context context) {
+        if (instance == null) {
+            RNPushNotificationConfig config = new RNPushNotificationConfig(context.getApplicationContext());
+            instance = new RNPushNotificationPipeline(config.getPipelineQueueCapacity());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the pipeline if it was started, null otherwise, without starting its thread
+     */
+    static synchronized RNPushNotificationPipeline peekInstance() {
+        return instance;
+    }
+
+    RNPushNotificationPipeline(int capacity) {
+        this.capacity = capacity;
+
+        HandlerThread thread = new HandlerThread("RNPushNotificationPipeline");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Run the task on the pipeline thread, waiting for room in the queue if it is full.
+     *
+     * @return true if the task was queued, false if the queue was full and the task ran inline,
+     * when called on the pipeline thread, or was dropped as the caller was interrupted waiting
+     */
+    public boolean post(Runnable task) {
+        return postDelayed(task, 0);
+    }
+
+    public boolean postDelayed(final Runnable task, long delayMillis) {
+        submitted.incrementAndGet();
+
+        int queued;
+        while ((queued = depth.incrementAndGet()) > capacity) {
+            overflowed.incrementAndGet();
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                Log.w(LOG_TAG, "Notification pipeline is full (" + capacity + "), queueing task of the main thread past it");
+                break;
+            }
+            release();
+            if (isPipelineThread()) {
+                Log.w(LOG_TAG, "Notification pipeline is full (" + capacity + "), running task inline");
+                run(task);
+                return false;
+            }
+            if (!awaitRoom()) {
+                Log.w(LOG_TAG, "Interrupted waiting for room in the notification pipeline, dropping task");
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        updateMaxDepth(queued);
+
+        Runnable wrapped = new Runnable() {
+            public void run() {
+                release();
+                RNPushNotificationPipeline.this.run(task);
+            }
+        };
+        if (delayMillis > 0) {
+            handler.postDelayed(wrapped, delayMillis);
+        } else {
+            handler.post(wrapped);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the thread was interrupted
+     */
+    private boolean awaitRoom() {
+        synchronized (room) {
+            waiting++;
+            try {
+                while (depth.get() >= capacity) {
+                    room.wait();
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting--;
+            }
+        }
+    }
+
+    /**
+     * Give back a place in the queue, waking up the producers waiting for one.
+     */
+    private void release() {
+        if (depth.decrementAndGet() < capacity && waiting > 0) {
+            synchronized (room) {
+                room.notifyAll();
+            }
+        }
+    }
+
+    public boolean isPipelineThread() {
+        return handler.getLooper().getThread() == Thread.currentThread();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getOverflowCount() {
+        return overflowed.get();
+    }
+
+    /**
+     * @return how many tasks were dropped as their producer was interrupted waiting for room
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Notification pipeline task failed", e);
+        } finally {
+            completed.incrementAndGet();
+        }
+    }
+
+    private void updateMaxDepth(int queued) {
+        int max;
+        do {
+            max = maxDepth.get();
+        } while (queued > max && !maxDepth.compareAndSet(max, queued));
+    }
+}
@@ -4,23 +4,54 @@ import android.app.Application;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Bundle;
 import android.util.Log;
 
 import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
 
 public class RNPushNotificationPublisher extends BroadcastReceiver {
     final static String NOTIFICATION_ID = "notificationId";
+    final static String ACTION_SCHEDULER_TICK = "com.dieam.reactnativepushnotification.SCHEDULER_TICK";
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        final Application applicationContext = (Application) context.getApplicationContext();
+
+        if (ACTION_SCHEDULER_TICK.equals(intent.getAction())) {
+            Log.i(LOG_TAG, "NotificationPublisher: Scheduler tick, Now Time: " + System.currentTimeMillis());
+
+            // Any number of notifications can be due, publish them off the main thread
+            // Queued even past the pipeline's limit, as the main thread's work always is
+            final PendingResult pendingResult = goAsync();
+            RNPushNotificationPipeline.getInstance(applicationContext).post(new Runnable() {
+                public void run() {
+                    try {
+                        RNPushNotificationEngine.getInstance(applicationContext).getHelper().publishDueNotifications();
+                    } finally {
+                        pendingResult.finish();
+                    }
+                }
+            });
+            return;
+        }
+
         int id = intent.getIntExtra(NOTIFICATION_ID, 0);
         long currentTime = System.currentTimeMillis();
 
         Log.i(LOG_TAG, "NotificationPublisher: Prepare To Publish: " + id + ", Now Time: " + currentTime);
 
-        Application applicationContext = (Application) context.getApplicationContext();
-
-        new RNPushNotificationHelper(applicationContext)
-                .sendToNotificationCentre(intent.getExtras());
+        // Rendering may fetch a large icon or picture over the network, so not on the main thread
+        final Bundle bundle = intent.getExtras();
+        final PendingResult pendingResult = goAsync();
+        RNPushNotificationPipeline.getInstance(applicationContext).post(new Runnable() {
+            public void run() {
+                try {
+                    RNPushNotificationEngine.getInstance(applicationContext).getHelper()
+                            .sendToNotificationCentre(bundle);
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,69 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * Date math of repeating notifications.
+ * <p>
+ * Plain Java, so the benchmarks in android/benchmark can run it on a plain JVM.
+ */
+public class RNPushNotificationRepeat {
+    private static final int ONE_MINUTE = 60 * 1000;
+    private static final long ONE_HOUR = 60 * ONE_MINUTE;
+    private static final long ONE_DAY = 24 * ONE_HOUR;
+    private static final List<String> REPEAT_TYPES = Arrays.asList("time", "month", "week", "day", "hour", "minute");
+
+    private RNPushNotificationRepeat() {
+    }
+
+    public static boolean isValidRepeatType(String repeatType) {
+        return REPEAT_TYPES.contains(repeatType);
+    }
+
+    /**
+     * @param repeatType one of time, month, week, day, hour or minute
+     * @param fireDate   when the notification fired, in milliseconds since the epoch
+     * @param repeatTime the interval in milliseconds, for the time repeat type
+     * @param now        the current time, months repeat from it rather than from fireDate
+     * @return when the notification fires next, or 0 if it does not repeat
+     */
+    public static long nextFireDate(String repeatType, long fireDate, long repeatTime, long now) {
+        switch (repeatType) {
+            case "time":
+                return repeatTime > 0 ? fireDate + repeatTime : 0;
+            case "month":
+                final Calendar fireDateCalendar = new GregorianCalendar();
+                fireDateCalendar.setTime(new Date(fireDate));
+                final int fireDay = fireDateCalendar.get(Calendar.DAY_OF_MONTH);
+                final int fireMinute = fireDateCalendar.get(Calendar.MINUTE);
+                final int fireHour = fireDateCalendar.get(Calendar.HOUR_OF_DAY);
+
+                final Calendar nextEvent = new GregorianCalendar();
+                nextEvent.setTime(new Date(now));
+                final int currentMonth = nextEvent.get(Calendar.MONTH);
+                int nextMonth = currentMonth < 11 ? (currentMonth + 1) : 0;
+                nextEvent.set(Calendar.YEAR, nextEvent.get(Calendar.YEAR) + (nextMonth == 0 ? 1 : 0));
+                nextEvent.set(Calendar.MONTH, nextMonth);
+                final int maxDay = nextEvent.getActualMaximum(Calendar.DAY_OF_MONTH);
+                nextEvent.set(Calendar.DAY_OF_MONTH, fireDay <= maxDay ? fireDay : maxDay);
+                nextEvent.set(Calendar.HOUR_OF_DAY, fireHour);
+                nextEvent.set(Calendar.MINUTE, fireMinute);
+                nextEvent.set(Calendar.SECOND, 0);
+                return nextEvent.getTimeInMillis();
+            case "week":
+                return fireDate + 7 * ONE_DAY;
+            case "day":
+                return fireDate + ONE_DAY;
+            case "hour":
+                return fireDate + ONE_HOUR;
+            case "minute":
+                return fireDate + ONE_MINUTE;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * SQLite backed storage for scheduled notifications.
+ * <p>
+ * Entries used to live in the {@link RNPushNotificationHelper#PREFERENCES_KEY} preferences file,
+ * one JSON string per id, which got rewritten on every change and had to be parsed completely
+ * to find anything. They are moved over here by {@link #migrate()}.
+ * <p>
+ * Version 1 of the database kept the attributes as JSON, which loses every field
+ * {@link RNPushNotificationAttributes} does not know. Since version 2 they are kept in the
+ * binary form of {@link RNPushNotificationBundleCodec}, the JSON rows are converted on upgrade.
+ */
+public class RNPushNotificationScheduleStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "rn_push_notification.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE = "scheduled_notifications";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_FIRE_DATE = "fire_date";
+    private static final String COLUMN_TAG = "tag";
+    private static final String COLUMN_GROUP = "grp";
+    private static final String COLUMN_BUNDLE = "bundle";
+    // Version 1 only
+    private static final String COLUMN_ATTRIBUTES = "attributes";
+
+    private static RNPushNotificationScheduleStore instance;
+
+    private final Context context;
+    // Set once the legacy preferences are moved over, see migrate
+    private volatile boolean migrated;
+
+    public static synchronized RNPushNotificationScheduleStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationScheduleStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RNPushNotificationScheduleStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " (" +
+                COLUMN_ID + " TEXT PRIMARY KEY NOT NULL, " +
+                COLUMN_FIRE_DATE + " INTEGER NOT NULL, " +
+                COLUMN_TAG + " TEXT, " +
+                COLUMN_GROUP + " TEXT, " +
+                COLUMN_BUNDLE + " BLOB NOT NULL)");
+        db.execSQL("CREATE INDEX " + TABLE + "_fire_date ON " + TABLE + " (" + COLUMN_FIRE_DATE + ")");
+        db.execSQL("CREATE INDEX " + TABLE + "_tag ON " + TABLE + " (" + COLUMN_TAG + ")");
+        db.execSQL("CREATE INDEX " + TABLE + "_grp ON " + TABLE + " (" + COLUMN_GROUP + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            migrateFromJson(db);
+        }
+    }
+
+    /**
+     * Rebuild the table with the binary column, converting every JSON row. Runs within the
+     * transaction of onUpgrade.
+     */
+    private void migrateFromJson(SQLiteDatabase db) {
+        String oldTable = TABLE + "_v1";
+        db.execSQL("ALTER TABLE " + TABLE + " RENAME TO " + oldTable);
+        db.execSQL("DROP INDEX IF EXISTS " + TABLE + "_fire_date");
+        db.execSQL("DROP INDEX IF EXISTS " + TABLE + "_tag");
+        db.execSQL("DROP INDEX IF EXISTS " + TABLE + "_grp");
+        onCreate(db);
+
+        int migrated = 0;
+        Cursor cursor = db.query(oldTable, new String[]{COLUMN_ID, COLUMN_ATTRIBUTES},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    RNPushNotificationAttributes attributes = RNPushNotificationAttributes.fromJson(cursor.getString(1));
+                    db.insertWithOnConflict(TABLE, null, toContentValues(attributes), SQLiteDatabase.CONFLICT_REPLACE);
+                    migrated++;
+                } catch (JSONException e) {
+                    Log.w(LOG_TAG, "Dropping unreadable scheduled notification " + cursor.getString(0), e);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        db.execSQL("DROP TABLE " + oldTable);
+
+        Log.i(LOG_TAG, "Converted " + migrated + " scheduled notifications from JSON");
+    }
+
+    /**
+     * @return true if the entry was stored
+     */
+    public boolean put(RNPushNotificationAttributes attributes) {
+        return openWritable().insertWithOnConflict(TABLE, null, toContentValues(attributes), SQLiteDatabase.CONFLICT_REPLACE) != -1;
+    }
+
+    public boolean contains(String id) {
+        Cursor cursor = openReadable().query(TABLE, new String[]{COLUMN_ID},
+                COLUMN_ID + "=?", new String[]{id}, null, null, null);
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public RNPushNotificationAttributes get(String id) {
+        Cursor cursor = openReadable().query(TABLE, new String[]{COLUMN_ID, COLUMN_BUNDLE},
+                COLUMN_ID + "=?", new String[]{id}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? fromRow(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return true if an entry was removed
+     */
+    public boolean remove(String id) {
+        return openWritable().delete(TABLE, COLUMN_ID + "=?", new String[]{id}) > 0;
+    }
+
+    /**
+     * Remove entries in a single transaction, so the database is written once for all of them.
+     *
+     * @return how many entries were removed
+     */
+    public int removeAll(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        int removed = 0;
+        SQLiteDatabase db = openWritable();
+        db.beginTransaction();
+        try {
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE " + COLUMN_ID + "=?");
+            try {
+                for (String id : ids) {
+                    delete.bindString(1, id);
+                    removed += delete.executeUpdateDelete();
+                }
+            } finally {
+                delete.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return removed;
+    }
+
+    public List<String> getIds() {
+        List<String> ids = new ArrayList<>();
+        Cursor cursor = openReadable().query(TABLE, new String[]{COLUMN_ID},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Keyset paging over all entries, ordered by fire date then id. Pass the fire date and id of
+     * the last row of the previous page, see {@link Page}, so entries removed meanwhile do not
+     * shift the pages.
+     */
+    public Page getPage(long afterFireDate, String afterId, int limit) {
+        Page page = new Page(afterFireDate, afterId);
+        String after = Long.toString(afterFireDate);
+        Cursor cursor = openReadable().query(TABLE, new String[]{COLUMN_ID, COLUMN_BUNDLE, COLUMN_FIRE_DATE},
+                COLUMN_FIRE_DATE + ">? OR (" + COLUMN_FIRE_DATE + "=? AND " + COLUMN_ID + ">?)",
+                new String[]{after, after, afterId}, null, null,
+                COLUMN_FIRE_DATE + ", " + COLUMN_ID, Integer.toString(limit));
+        try {
+            while (cursor.moveToNext()) {
+                page.rowCount++;
+                page.lastFireDate = cursor.getLong(2);
+                page.lastId = cursor.getString(0);
+                RNPushNotificationAttributes attributes = fromRow(cursor);
+                if (attributes != null) {
+                    page.entries.add(attributes);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return page;
+    }
+
+    /**
+     * @return the earliest fire date of all entries, or null when nothing is scheduled
+     */
+    public Long getNextFireDate() {
+        Cursor cursor = openReadable().query(TABLE, new String[]{COLUMN_FIRE_DATE},
+                null, null, null, null, COLUMN_FIRE_DATE, "1");
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Entries that cannot be decoded are removed, as they would otherwise stay due, and keep the
+     * single alarm firing, forever.
+     *
+     * @return the entries due at the given time, ordered by fire date
+     */
+    public List<RNPushNotificationAttributes> getDue(long now) {
+        List<RNPushNotificationAttributes> due = new ArrayList<>();
+        List<String> unreadable = new ArrayList<>();
+        Cursor cursor = openReadable().query(TABLE, new String[]{COLUMN_ID, COLUMN_BUNDLE},
+                COLUMN_FIRE_DATE + "<=?", new String[]{Long.toString(now)}, null, null, COLUMN_FIRE_DATE);
+        try {
+            while (cursor.moveToNext()) {
+                RNPushNotificationAttributes attributes = fromRow(cursor);
+                if (attributes != null) {
+                    due.add(attributes);
+                } else {
+                    unreadable.add(cursor.getString(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (!unreadable.isEmpty()) {
+            Log.w(LOG_TAG, "Dropping " + unreadable.size() + " unreadable due scheduled notifications");
+            removeAll(unreadable);
+        }
+        return due;
+    }
+
+    /**
+     * Find the ids of the entries matching all fields of userInfo, see
+     * {@link RNPushNotificationAttributes#matches(Map)}.
+     * <p>
+     * String values for id, tag and group are looked up through their index first, so only the
+     * candidates sharing them get read. userInfo is compiled once for all of them, and checked
+     * against the stored bytes without decoding them.
+     */
+    public List<String> findMatching(ReadableMap userInfo) {
+        RNPushNotificationMatcher matcher = RNPushNotificationMatcher.compile(userInfo.toHashMap());
+
+        StringBuilder selection = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+        appendIndexedSelection(matcher, "id", COLUMN_ID, selection, selectionArgs);
+        appendIndexedSelection(matcher, "tag", COLUMN_TAG, selection, selectionArgs);
+        appendIndexedSelection(matcher, "group", COLUMN_GROUP, selection, selectionArgs);
+
+        List<String> ids = new ArrayList<>();
+        Cursor cursor = openReadable().query(TABLE, new String[]{COLUMN_ID, COLUMN_BUNDLE},
+                selection.length() > 0 ? selection.toString() : null,
+                selectionArgs.toArray(new String[selectionArgs.size()]), null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    if (RNPushNotificationBundleCodec.matches(cursor.getBlob(1), matcher)) {
+                        ids.add(cursor.getString(0));
+                    }
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Problem dealing with scheduled notification " + cursor.getString(0), e);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private static void appendIndexedSelection(RNPushNotificationMatcher matcher, String key, String column,
+                                               StringBuilder selection, List<String> selectionArgs) {
+        String value = matcher.getString(key);
+        if (value == null) {
+            return;
+        }
+        if (selection.length() > 0) {
+            selection.append(" AND ");
+        }
+        selection.append(column).append("=?");
+        selectionArgs.add(value);
+    }
+
+    /**
+     * @param cursor positioned on a row with the id and bundle columns, in that order
+     * @return null if the row cannot be decoded
+     */
+    private static RNPushNotificationAttributes fromRow(Cursor cursor) {
+        try {
+            return RNPushNotificationAttributes.fromBytes(cursor.getBlob(1));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Problem dealing with scheduled notification " + cursor.getString(0), e);
+            return null;
+        }
+    }
+
+    private static ContentValues toContentValues(RNPushNotificationAttributes attributes) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, attributes.getId());
+        values.put(COLUMN_FIRE_DATE, (long) attributes.getFireDate());
+        values.put(COLUMN_TAG, attributes.getTag());
+        values.put(COLUMN_GROUP, attributes.getGroup());
+        values.put(COLUMN_BUNDLE, attributes.toBytes());
+        return values;
+    }
+
+    /**
+     * Move the entries of the legacy preferences file over, once per process. The engine's
+     * warm-up does it on the pipeline thread, so it is not paid by whoever touches the store
+     * first; reads and writes that come before that do it themselves, so they never miss an entry.
+     */
+    public void migrate() {
+        if (migrated) {
+            return;
+        }
+        synchronized (this) {
+            if (!migrated) {
+                long start = RNPushNotificationMetrics.begin("migrateScheduleStore");
+                try {
+                    migrateFromPreferences();
+                } finally {
+                    RNPushNotificationMetrics.end("migrateScheduleStore", start);
+                }
+                migrated = true;
+            }
+        }
+    }
+
+    private SQLiteDatabase openReadable() {
+        migrate();
+        return getReadableDatabase();
+    }
+
+    private SQLiteDatabase openWritable() {
+        migrate();
+        return getWritableDatabase();
+    }
+
+    private void migrateFromPreferences() {
+        SharedPreferences preferences = context.getSharedPreferences(RNPushNotificationHelper.PREFERENCES_KEY, Context.MODE_PRIVATE);
+        Map<String, ?> entries = preferences.getAll();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Log.i(LOG_TAG, "Migrating " + entries.size() + " scheduled notifications to " + DATABASE_NAME);
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, ?> entry : entries.entrySet()) {
+                if (!(entry.getValue() instanceof String)) {
+                    continue;
+                }
+                try {
+                    RNPushNotificationAttributes attributes = RNPushNotificationAttributes.fromJson((String) entry.getValue());
+                    db.insertWithOnConflict(TABLE, null, toContentValues(attributes), SQLiteDatabase.CONFLICT_REPLACE);
+                } catch (JSONException e) {
+                    Log.w(LOG_TAG, "Dropping unreadable scheduled notification " + entry.getKey(), e);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        preferences.edit().clear().commit();
+    }
+
+    /**
+     * A page of {@link #getPage}. Rows that cannot be decoded are left out of the entries but
+     * still counted, and still move the keyset on, so they do not end the paging early.
+     */
+    public static class Page {
+        private final List<RNPushNotificationAttributes> entries = new ArrayList<>();
+        private int rowCount;
+        private long lastFireDate;
+        private String lastId;
+
+        private Page(long afterFireDate, String afterId) {
+            this.lastFireDate = afterFireDate;
+            this.lastId = afterId;
+        }
+
+        public List<RNPushNotificationAttributes> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return how many rows the page read, decoded or not
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return the fire date of the last row, to pass to the next getPage
+         */
+        public long getLastFireDate() {
+            return lastFireDate;
+        }
+
+        /**
+         * @return the id of the last row, to pass to the next getPage
+         */
+        public String getLastId() {
+            return lastId;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+import static com.dieam.reactnativepushnotification.modules.RNPushNotification.LOG_TAG;
+
+/**
+ * The default {@link RNPushNotificationMessageSink}, writing chat messages into the `messages`
+ * table of the app's WatermelonDB database.
+ * <p>
+ * Holds a single connection to the database, keeps the statements compiled and commits each
+ * batch of the {@link RNPushNotificationMessageDispatcher} in one transaction.
+ */
+public class RNPushNotificationWatermelonWriter implements RNPushNotificationMessageSink {
+    private static final String DATABASE_NAME = "watermelon.db";
+
+    private static final String SELECT_CONTACT_SQL = "SELECT id FROM contacts WHERE _id=?";
+    private static final String INSERT_MESSAGE_SQL = "INSERT INTO 'messages'('id','_changed','_status','_id','archive_id','audio','correct','created','image','marker','text','user','contact_id','created_at','updated_at') " +
+            "VALUES (?,'','created',?,NULL,?,?,?,?,'{\"type\":\"markable\"}',?,?,?,?,0.0)";
+
+    private static RNPushNotificationWatermelonWriter instance;
+
+    private final Context context;
+
+    // Only touched from the dispatcher thread
+    private SQLiteDatabase database;
+    private SQLiteStatement selectContact;
+    private SQLiteStatement insertMessage;
+
+    private volatile long lastBatchCommitMillis;
+    private volatile long maxBatchCommitMillis;
+    private volatile int lastBatchSize;
+    private volatile long batchCount;
+    private volatile long messageCount;
+
+    public static synchronized RNPushNotificationWatermelonWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new RNPushNotificationWatermelonWriter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the writer if the dispatcher created it, null otherwise
+     */
+    static synchronized RNPushNotificationWatermelonWriter peekInstance() {
+        return instance;
+    }
+
+    private RNPushNotificationWatermelonWriter(Context context) {
+        this.context = context;
+    }
+
+    public long getLastBatchCommitMillis() {
+        return lastBatchCommitMillis;
+    }
+
+    public long getMaxBatchCommitMillis() {
+        return maxBatchCommitMillis;
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    @Override
+    public void onMessages(List<RNPushNotificationMessage> batch) {
+        long start = SystemClock.elapsedRealtime();
+        long traceStart = RNPushNotificationMetrics.begin("watermelonCommit");
+        int inserted = 0;
+
+        try {
+            SQLiteDatabase db = openDatabase();
+            db.beginTransaction();
+            try {
+                for (RNPushNotificationMessage message : batch) {
+                    if (insert(message)) {
+                        inserted++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            // Reopened with the next batch; the dispatcher logs and counts the failure
+            closeDatabase();
+            throw e;
+        } finally {
+            RNPushNotificationMetrics.end("watermelonCommit", traceStart);
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        lastBatchCommitMillis = elapsed;
+        maxBatchCommitMillis = Math.max(maxBatchCommitMillis, elapsed);
+        lastBatchSize = batch.size();
+        batchCount++;
+        messageCount += inserted;
+
+        Log.d(LOG_TAG, String.format("Committed %d/%d messages to %s in %d ms",
+                inserted, batch.size(), DATABASE_NAME, elapsed));
+    }
+
+    private boolean insert(RNPushNotificationMessage message) {
+        String localContactId;
+        selectContact.bindString(1, message.getContactId());
+        try {
+            localContactId = selectContact.simpleQueryForString();
+        } catch (SQLiteDoneException e) {
+            // Contact is not synced yet, nothing to attach the message to
+            return false;
+        } finally {
+            selectContact.clearBindings();
+        }
+
+        insertMessage.bindString(1, message.getId());
+        insertMessage.bindString(2, message.getId());
+        insertMessage.bindString(3, message.getAudio());
+        insertMessage.bindString(4, message.getCorrect());
+        insertMessage.bindDouble(5, message.getCreated());
+        insertMessage.bindString(6, message.getImage());
+        insertMessage.bindString(7, message.getText());
+        insertMessage.bindString(8, "{\"_id\":\"" + message.getContactId() + "\"}");
+        insertMessage.bindString(9, localContactId);
+        insertMessage.bindDouble(10, message.getCreated());
+        try {
+            insertMessage.executeInsert();
+            return true;
+        } catch (SQLiteConstraintException e) {
+            Log.w(LOG_TAG, "Message " + message.getId() + " already stored");
+            return false;
+        } finally {
+            insertMessage.clearBindings();
+        }
+    }
+
+    private SQLiteDatabase openDatabase() {
+        if (database == null || !database.isOpen()) {
+            // WatermelonDB says: On some systems there is some kind of lock on `/databases` folder so we get from parent folder
+            String dbPath = context.getDatabasePath(DATABASE_NAME).toString().replace("/databases", "");
+            database = SQLiteDatabase.openOrCreateDatabase(dbPath, null);
+            selectContact = database.compileStatement(SELECT_CONTACT_SQL);
+            insertMessage = database.compileStatement(INSERT_MESSAGE_SQL);
+        }
+        return database;
+    }
+
+    private void closeDatabase() {
+        try {
+            if (selectContact != null) {
+                selectContact.close();
+            }
+            if (insertMessage != null) {
+                insertMessage.close();
+            }
+            if (database != null) {
+                database.close();
+            }
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Problem closing " + DATABASE_NAME, e);
+        }
+        selectContact = null;
+        insertMessage = null;
+        database = null;
+    }
+}
@@ -0,0 +1,112 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+import android.os.Bundle;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowNotificationManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Scheduled notifications go through the store's binary form before they fire, and have to
+ * render the same as the bundle they were scheduled with.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RNPushNotificationAttributesTest {
+    private Application application;
+
+    public static class LauncherActivity extends Activity {
+    }
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.application;
+
+        Intent launchIntent = new Intent(Intent.ACTION_MAIN);
+        launchIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        launchIntent.setPackage(application.getPackageName());
+        ResolveInfo launcher = new ResolveInfo();
+        launcher.activityInfo = new ActivityInfo();
+        launcher.activityInfo.packageName = application.getPackageName();
+        launcher.activityInfo.name = LauncherActivity.class.getName();
+        shadowOf(application.getPackageManager()).addResolveInfoForIntent(launchIntent, launcher);
+    }
+
+    // A single test, as the helper and its singletons keep the application of the first one
+    @Test
+    public void storedNotificationsRenderAsScheduled() throws Exception {
+        Bundle defaults = scheduled("1");
+        Bundle stored = roundTrip(defaults);
+        assertFalse(stored.containsKey("playSound"));
+        assertFalse(stored.containsKey("vibrate"));
+        assertFalse(stored.containsKey("autoCancel"));
+
+        Bundle silent = scheduled("2");
+        silent.putBoolean("playSound", false);
+        silent.putBoolean("vibrate", false);
+        silent.putBoolean("autoCancel", false);
+        // As the JS bridge hands it over
+        silent.putDouble("number", 3);
+
+        RNPushNotificationHelper helper = RNPushNotificationEngine.getInstance(application).getHelper();
+        assertTrue(helper.showNotification(stored));
+        assertTrue(helper.showNotification(roundTrip(silent)));
+
+        Notification rendered = notificationManager().getNotification(1);
+        assertNotNull(rendered);
+        assertNotNull("sound", rendered.sound);
+        assertNotNull("vibration", rendered.vibrate);
+        assertTrue("auto cancel", (rendered.flags & Notification.FLAG_AUTO_CANCEL) != 0);
+
+        rendered = notificationManager().getNotification(2);
+        assertNotNull(rendered);
+        assertNull("sound", rendered.sound);
+        assertNull("vibration", rendered.vibrate);
+        assertFalse("auto cancel", (rendered.flags & Notification.FLAG_AUTO_CANCEL) != 0);
+        assertEquals(3, rendered.number);
+
+        // The legacy JSON form reads missing fields the same way
+        JSONObject json = new RNPushNotificationAttributes(defaults).toJson();
+        assertTrue(json.getBoolean("playSound"));
+        assertTrue(json.getBoolean("vibrate"));
+        assertTrue(json.getBoolean("autoCancel"));
+        assertEquals(json.toString(), RNPushNotificationAttributes.fromJson(json.toString()).toJson().toString());
+    }
+
+    private static Bundle scheduled(String id) {
+        Bundle bundle = new Bundle();
+        bundle.putString("id", id);
+        bundle.putString("message", "Scheduled " + id);
+        bundle.putDouble("fireDate", System.currentTimeMillis());
+        return bundle;
+    }
+
+    private static Bundle roundTrip(Bundle bundle) throws Exception {
+        byte[] bytes = new RNPushNotificationAttributes(bundle).toBytes();
+        return RNPushNotificationAttributes.fromBytes(bytes).toBundle();
+    }
+
+    private ShadowNotificationManager notificationManager() {
+        return shadowOf((NotificationManager) application.getSystemService(Context.NOTIFICATION_SERVICE));
+    }
+}
@@ -0,0 +1,49 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.app.Activity;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The tracker registered while an activity was already started, as it is when the React module
+ * is created, and what it reports as the user moves on from that activity.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RNPushNotificationForegroundTrackerTest {
+
+    @Test
+    public void staysInTheForegroundWhenLeavingAnActivityStartedBeforeRegistration() {
+        RNPushNotificationForegroundTracker tracker = new RNPushNotificationForegroundTracker(true);
+        Activity first = new Activity();
+        Activity second = new Activity();
+
+        // first started before the tracker, second is opened from it
+        tracker.onActivityStarted(second);
+        tracker.onActivityStopped(first);
+        assertTrue("second is visible", tracker.isForeground());
+
+        tracker.onActivityStopped(second);
+        assertFalse(tracker.isForeground());
+        assertEquals(1, tracker.getTransitionCount());
+    }
+
+    @Test
+    public void movesToTheBackgroundWhenTheActivityStartedBeforeRegistrationStops() {
+        RNPushNotificationForegroundTracker tracker = new RNPushNotificationForegroundTracker(true);
+
+        tracker.onActivityStopped(new Activity());
+        assertFalse(tracker.isForeground());
+
+        tracker.onActivityStarted(new Activity());
+        assertTrue(tracker.isForeground());
+        assertEquals(2, tracker.getTransitionCount());
+    }
+}
@@ -0,0 +1,216 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fetches from a local stand-in for an image server, which answers, fails, or stalls at will.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RNPushNotificationImageLoaderTest {
+    private static final int BUDGET_MS = 500;
+    // Leeway for thread scheduling on a loaded build machine
+    private static final long SLACK_MS = 1000;
+
+    private RNPushNotificationImageLoader loader;
+    private File file;
+    private StandInServer server;
+
+    @Before
+    public void setUp() {
+        loader = new RNPushNotificationImageLoader(RuntimeEnvironment.application, BUDGET_MS);
+        file = new File(RuntimeEnvironment.application.getCacheDir(), "image");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void fetchesTheImage() throws Exception {
+        final byte[] image = new byte[20 * 1024];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) i;
+        }
+        server = new StandInServer(new Responder() {
+            public void respond(Socket socket) throws Exception {
+                readRequest(socket);
+                OutputStream output = socket.getOutputStream();
+                writeHeaders(output, 200, image.length);
+                output.write(image);
+                output.flush();
+            }
+        });
+
+        assertTrue(loader.fetch(server.url(), file));
+        assertArrayEquals(image, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void failsOnAnErrorStatus() throws Exception {
+        server = new StandInServer(new Responder() {
+            public void respond(Socket socket) throws Exception {
+                readRequest(socket);
+                writeHeaders(socket.getOutputStream(), 404, 0);
+            }
+        });
+
+        assertFalse(loader.fetch(server.url(), file));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void givesUpOnAServerThatNeverAnswers() throws Exception {
+        server = new StandInServer(new Responder() {
+            public void respond(Socket socket) throws Exception {
+                Thread.sleep(10 * BUDGET_MS);
+            }
+        });
+
+        long start = System.nanoTime();
+        assertFalse(loader.fetch(server.url(), file));
+        assertWithinBudget(start);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void givesUpOnABodyThatTricklesIn() throws Exception {
+        // Every read comes in well within a read timeout, only the total is over budget
+        server = new StandInServer(new Responder() {
+            public void respond(Socket socket) throws Exception {
+                readRequest(socket);
+                OutputStream output = socket.getOutputStream();
+                writeHeaders(output, 200, 100);
+                for (int i = 0; i < 100; i++) {
+                    output.write(i);
+                    output.flush();
+                    Thread.sleep(BUDGET_MS / 10);
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        assertFalse(loader.fetch(server.url(), file));
+        assertWithinBudget(start);
+        assertFalse(file.exists());
+    }
+
+    private static void assertWithinBudget(long startNanos) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue("Took " + elapsed + " ms", elapsed < BUDGET_MS + SLACK_MS);
+    }
+
+    private static void readRequest(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            // Headers are not looked at
+        }
+    }
+
+    private static void writeHeaders(OutputStream output, int status, int length) throws IOException {
+        String headers = "HTTP/1.1 " + status + " Stand-in\r\n"
+                + "Content-Type: image/png\r\n"
+                + "Content-Length: " + length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        output.write(headers.getBytes("US-ASCII"));
+        output.flush();
+    }
+
+    private interface Responder {
+        void respond(Socket socket) throws Exception;
+    }
+
+    /**
+     * A minimal HTTP server on the loopback interface, handing every connection to the responder
+     * on a thread of its own.
+     */
+    private static class StandInServer implements Closeable {
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = new ArrayList<>();
+
+        StandInServer(final Responder responder) throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread acceptor = new Thread(new Runnable() {
+                public void run() {
+                    while (true) {
+                        final Socket socket;
+                        try {
+                            socket = serverSocket.accept();
+                        } catch (IOException e) {
+                            // Closed
+                            return;
+                        }
+                        synchronized (sockets) {
+                            sockets.add(socket);
+                        }
+                        Thread connection = new Thread(new Runnable() {
+                            public void run() {
+                                try {
+                                    responder.respond(socket);
+                                } catch (Exception e) {
+                                    // The client went away
+                                } finally {
+                                    closeQuietly(socket);
+                                }
+                            }
+                        });
+                        connection.setDaemon(true);
+                        connection.start();
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/image.png";
+        }
+
+        public void close() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    closeQuietly(socket);
+                }
+            }
+        }
+
+        private static void closeQuietly(Socket socket) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Inbox history only kept for the notifications still around, or the most recent ones.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RNPushNotificationInboxHistoryTest {
+
+    // A single test, as the history keeps the application of the first one
+    @Test
+    public void forgetsRemovedAndLeastRecentlyUsedIds() {
+        Application application = RuntimeEnvironment.application;
+        File dir = new File(application.getFilesDir(), "rn_push_notification_inbox");
+        RNPushNotificationInboxHistory history = RNPushNotificationInboxHistory.getInstance(application);
+
+        history.add(1, "first");
+        history.add(1, "second");
+        assertEquals(2, history.getCount(1));
+        history.remove(1);
+        assertEquals(0, history.getCount(1));
+        assertFalse(new File(dir, "1").exists());
+
+        int ids = RNPushNotificationInboxHistory.MAX_IDS + 5;
+        for (int id = 1; id <= ids; id++) {
+            history.add(id, "message " + id);
+        }
+        assertEquals(RNPushNotificationInboxHistory.MAX_IDS, dir.list().length);
+        assertTrue(new File(dir, String.valueOf(ids)).exists());
+        assertEquals(1, history.getCount(ids));
+
+        history.setBadgeCount(4);
+        history.removeAll();
+        assertEquals(0, history.getCount(ids));
+        assertEquals(4, history.getBadgeCount());
+        assertEquals(1, dir.list().length);
+    }
+}
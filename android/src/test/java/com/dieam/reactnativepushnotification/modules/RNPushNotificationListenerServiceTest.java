@@ -0,0 +1,369 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.app.Activity;
+import android.app.AlarmManager;
+import android.app.Application;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+
+import com.google.firebase.messaging.RemoteMessage;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Burst load test of the real listener service and helper: replays the payloads of
+ * payloads.jsonl, hundreds of times over, through {@link RNPushNotificationListenerService}, with
+ * Robolectric's NotificationManager, AlarmManager and SQLite standing in for the device's.
+ * <p>
+ * Each corpus line is a template with a weight: "remote" ones hold the data map of an FCM
+ * message, "local" ones the typed bundle of a scheduled notification. Every message gets a fresh
+ * message id, notification id and chat message id, so nothing is dropped as a duplicate or
+ * replaces an earlier notification.
+ * <p>
+ * Pushes are received on a thread of their own, as FCM does. The main looper is left paused, as
+ * there is no React here to deliver to: pushes that wait for React, with contentAvailable, are
+ * left out, as are images, which would be fetched over the network.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RNPushNotificationListenerServiceTest {
+    private static final int WARM_UP_MESSAGES = 50;
+    private static final int MESSAGES = 1000;
+    private static final String WATERMELON_DB = "watermelon.db";
+
+    private Application application;
+    private RNPushNotificationListenerService service;
+    private ExecutorService fcmThread;
+    private final List<JSONObject> remoteTemplates = new ArrayList<>();
+    private final List<JSONObject> localTemplates = new ArrayList<>();
+    private final Random random = new Random(42);
+    private int sequence;
+
+    public static class LauncherActivity extends Activity {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        application = RuntimeEnvironment.application;
+
+        // The helper opens the launcher activity from notifications, and shows none without one
+        Intent launchIntent = new Intent(Intent.ACTION_MAIN);
+        launchIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        launchIntent.setPackage(application.getPackageName());
+        ResolveInfo launcher = new ResolveInfo();
+        launcher.activityInfo = new ActivityInfo();
+        launcher.activityInfo.packageName = application.getPackageName();
+        launcher.activityInfo.name = LauncherActivity.class.getName();
+        shadowOf(application.getPackageManager()).addResolveInfoForIntent(launchIntent, launcher);
+
+        // Renders of an inbox are otherwise coalesced on a delayed task, which only runs once
+        // Robolectric's clock is moved on
+        Bundle metaData = new Bundle();
+        metaData.putInt("com.dieam.reactnativepushnotification.inbox_coalesce_window", 0);
+        shadowOf(application.getPackageManager()).getInternalMutablePackageInfo(application.getPackageName())
+                .applicationInfo.metaData = metaData;
+
+        readCorpus();
+        createWatermelonDatabase();
+
+        service = Robolectric.buildService(RNPushNotificationListenerService.class).get();
+        fcmThread = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        fcmThread.shutdownNow();
+    }
+
+    @Test
+    public void burstOfPushes() throws Exception {
+        // The pipeline, the writer and every other singleton are created by the first pushes
+        receive(nextRemoteMessages(WARM_UP_MESSAGES));
+
+        int threadsBefore = Thread.activeCount();
+        int receiversBefore = shadowOf(application).getRegisteredReceivers().size();
+        int databaseHandlesBefore = openDatabaseHandles();
+        long deferredBefore = RNPushNotificationDeferredWork.getInstance(application).getDeferredCount();
+        int notificationsBefore = shadowOf(notificationManager()).size();
+        int storedBefore = countStoredMessages();
+
+        List<RemoteMessage> burst = nextRemoteMessages(MESSAGES);
+        long[] latencies = receive(burst);
+
+        Arrays.sort(latencies);
+        long p99 = latencies[latencies.length * 99 / 100];
+        int budget = RNPushNotificationDeferredWork.getInstance(application).getBudget();
+        assertTrue("p99 of onMessageReceived is " + p99 + " ms", p99 < budget);
+        assertEquals("pushes deferred past their budget", deferredBefore,
+                RNPushNotificationDeferredWork.getInstance(application).getDeferredCount());
+
+        assertEquals("notifications", notificationsBefore + countShown(burst), shadowOf(notificationManager()).size());
+        assertEquals("stored chat messages", storedBefore + countChatMessages(burst), countStoredMessages());
+        // Remote pushes are shown right away, and need no alarm
+        assertEquals("alarms", 0, shadowOf(alarmManager()).getScheduledAlarms().size());
+
+        // FCM redelivering the whole burst shows and stores nothing more
+        int notificationsAfter = shadowOf(notificationManager()).size();
+        int storedAfter = countStoredMessages();
+        receive(burst);
+        assertEquals("notifications after redelivery", notificationsAfter, shadowOf(notificationManager()).size());
+        assertEquals("stored chat messages after redelivery", storedAfter, countStoredMessages());
+
+        // Scheduled ones get one alarm each
+        List<Bundle> scheduled = nextLocalBundles(MESSAGES / 10);
+        RNPushNotificationHelper helper = RNPushNotificationEngine.getInstance(application).getHelper();
+        for (Bundle bundle : scheduled) {
+            helper.sendNotificationScheduled(bundle);
+        }
+        assertEquals("alarms", scheduled.size(), shadowOf(alarmManager()).getScheduledAlarms().size());
+        assertEquals("stored scheduled notifications", scheduled.size(),
+                RNPushNotificationScheduleStore.getInstance(application).getIds().size());
+
+        // Nothing piles up with the number of pushes
+        assertEquals("threads", threadsBefore, Thread.activeCount());
+        assertEquals("registered receivers", receiversBefore, shadowOf(application).getRegisteredReceivers().size());
+        if (databaseHandlesBefore >= 0) {
+            assertEquals("open database handles", databaseHandlesBefore, openDatabaseHandles());
+        }
+    }
+
+    /**
+     * Receive the messages one after the other on the FCM thread.
+     *
+     * @return how long each onMessageReceived took, in milliseconds
+     */
+    private long[] receive(List<RemoteMessage> messages) throws Exception {
+        long[] latencies = new long[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            final RemoteMessage message = messages.get(i);
+            latencies[i] = fcmThread.submit(new Callable<Long>() {
+                public Long call() {
+                    long start = System.nanoTime();
+                    service.onMessageReceived(message);
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+            }).get();
+        }
+        return latencies;
+    }
+
+    private List<RemoteMessage> nextRemoteMessages(int count) throws Exception {
+        List<RemoteMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JSONObject data = new JSONObject(remoteTemplates.get(random.nextInt(remoteTemplates.size())).toString());
+            int n = ++sequence;
+
+            RemoteMessage.Builder builder = new RemoteMessage.Builder("sender@fcm.googleapis.com")
+                    .setMessageId("0:" + n + "%test");
+            data.remove("google.message_id");
+            data.put("id", Integer.toString(n));
+            if (data.has("cancel")) {
+                // Cancels the notification of the push itself, rather than whichever earlier
+                // one happened to get the id of the corpus
+                data.put("cancel", Integer.toString(n));
+            }
+            if (data.has("payload")) {
+                JSONObject payload = new JSONObject(data.getString("payload"));
+                JSONObject attributes = payload.getJSONObject("entity").optJSONObject("attributes");
+                if (attributes != null && attributes.has("messageId")) {
+                    attributes.put("messageId", "message-" + n);
+                }
+                data.put("payload", payload.toString());
+            }
+            Iterator<String> keys = data.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                builder.addData(key, data.getString(key));
+            }
+            messages.add(builder.build());
+        }
+        return messages;
+    }
+
+    private List<Bundle> nextLocalBundles(int count) throws Exception {
+        List<Bundle> bundles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JSONObject template = localTemplates.get(random.nextInt(localTemplates.size()));
+            Bundle bundle = new Bundle();
+            // Typed as the JS bridge does, numbers are doubles
+            Iterator<String> keys = template.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                Object value = template.get(key);
+                if (value instanceof Number) {
+                    bundle.putDouble(key, ((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    bundle.putBoolean(key, (Boolean) value);
+                } else {
+                    bundle.putString(key, value.toString());
+                }
+            }
+            bundle.putString("id", Integer.toString(++sequence));
+            // An hour from now, so it is scheduled rather than shown
+            bundle.putDouble("fireDate", System.currentTimeMillis() + 60 * 60 * 1000);
+            bundles.add(bundle);
+        }
+        return bundles;
+    }
+
+    private static int countShown(List<RemoteMessage> messages) {
+        int shown = 0;
+        for (RemoteMessage message : messages) {
+            Map<String, String> data = message.getData();
+            if ((data.containsKey("message") || data.containsKey("twi_body")) && !data.containsKey("cancel")) {
+                shown++;
+            }
+        }
+        return shown;
+    }
+
+    private static int countChatMessages(List<RemoteMessage> messages) throws Exception {
+        int chat = 0;
+        for (RemoteMessage message : messages) {
+            String payload = message.getData().get("payload");
+            if (payload != null && "message".equals(new JSONObject(payload).optString("type"))) {
+                chat++;
+            }
+        }
+        return chat;
+    }
+
+    private void readCorpus() throws IOException, org.json.JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("payloads.jsonl"), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JSONObject template = new JSONObject(line);
+                boolean remote = "remote".equals(template.getString("kind"));
+                JSONObject content = template.getJSONObject(remote ? "data" : "bundle");
+                if (remote && (content.has("contentAvailable") || content.has("largeIcon") || content.has("bigPicture"))) {
+                    continue;
+                }
+                for (int i = template.optInt("weight", 1); i > 0; i--) {
+                    (remote ? remoteTemplates : localTemplates).add(content);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The tables of the app's WatermelonDB database the writer uses, with every contact of the
+     * corpus already synced.
+     */
+    private void createWatermelonDatabase() throws Exception {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(watermelonPath(), null);
+        try {
+            db.execSQL("CREATE TABLE contacts (id TEXT PRIMARY KEY NOT NULL, _id TEXT)");
+            db.execSQL("CREATE TABLE messages (id TEXT PRIMARY KEY NOT NULL, _changed TEXT, _status TEXT, _id TEXT, " +
+                    "archive_id TEXT, audio TEXT, correct TEXT, created REAL, image TEXT, marker TEXT, text TEXT, " +
+                    "user TEXT, contact_id TEXT, created_at REAL, updated_at REAL)");
+            for (JSONObject data : remoteTemplates) {
+                if (data.has("payload")) {
+                    String contact = new JSONObject(data.getString("payload")).getJSONObject("entity").optString("contact", null);
+                    if (contact != null) {
+                        db.execSQL("INSERT OR IGNORE INTO contacts (id, _id) VALUES (?, ?)", new Object[]{"local-" + contact, contact});
+                    }
+                }
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private int countStoredMessages() {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(watermelonPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM messages", null);
+            try {
+                cursor.moveToFirst();
+                return cursor.getInt(0);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private String watermelonPath() {
+        // Where the writer looks for it, next to the databases folder
+        return application.getDatabasePath(WATERMELON_DB).toString().replace("/databases", "");
+    }
+
+    /**
+     * @return how many database files of the app the process has open, -1 where that cannot be
+     * told
+     */
+    private int openDatabaseHandles() throws IOException {
+        File descriptors = new File("/proc/self/fd");
+        File[] links = descriptors.listFiles();
+        if (links == null) {
+            return -1;
+        }
+        String dataDir = application.getFilesDir().getParentFile().getCanonicalPath();
+        int handles = 0;
+        for (File link : links) {
+            Path target;
+            try {
+                target = Files.readSymbolicLink(link.toPath());
+            } catch (IOException e) {
+                // Closed meanwhile
+                continue;
+            }
+            String path = target.toString();
+            if (path.startsWith(dataDir) && (path.endsWith(".db") || path.endsWith("-journal") || path.endsWith("-wal"))) {
+                handles++;
+            }
+        }
+        return handles;
+    }
+
+    private NotificationManager notificationManager() {
+        return (NotificationManager) application.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    private AlarmManager alarmManager() {
+        return (AlarmManager) application.getSystemService(Context.ALARM_SERVICE);
+    }
+}
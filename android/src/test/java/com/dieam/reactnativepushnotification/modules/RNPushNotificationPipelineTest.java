@@ -0,0 +1,111 @@
+package com.dieam.reactnativepushnotification.modules;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A pipeline whose queue is full, as its thread is stuck on a task, and what happens to the work
+ * posted then.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RNPushNotificationPipelineTest {
+    private static final int CAPACITY = 4;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private RNPushNotificationPipeline pipeline;
+    private CountDownLatch gate;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        pipeline = new RNPushNotificationPipeline(CAPACITY);
+        gate = new CountDownLatch(1);
+
+        final CountDownLatch stuck = new CountDownLatch(1);
+        pipeline.post(new Runnable() {
+            public void run() {
+                stuck.countDown();
+                awaitQuietly(gate);
+            }
+        });
+        assertTrue(stuck.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        gate.countDown();
+    }
+
+    @Test
+    public void queuesMainThreadWorkPastTheLimit() throws InterruptedException {
+        // Robolectric runs tests on the main looper's thread, as receivers and jobs are called
+        assertSame(Looper.getMainLooper(), Looper.myLooper());
+
+        int tasks = CAPACITY + 3;
+        CountDownLatch ran = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            assertTrue(pipeline.post(countDown(ran)));
+        }
+        assertEquals(tasks, pipeline.getDepth());
+        assertEquals(3, pipeline.getOverflowCount());
+
+        gate.countDown();
+        assertTrue(ran.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void blocksBackgroundProducersUntilThereIsRoom() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(CAPACITY + 1);
+        for (int i = 0; i < CAPACITY; i++) {
+            pipeline.post(countDown(ran));
+        }
+
+        final Runnable last = countDown(ran);
+        final CountDownLatch posted = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                pipeline.post(last);
+                posted.countDown();
+            }
+        });
+        producer.start();
+        assertFalse("posted while the queue was full", posted.await(200, TimeUnit.MILLISECONDS));
+
+        gate.countDown();
+        assertTrue(posted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(ran.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, pipeline.getDroppedCount());
+        producer.join();
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
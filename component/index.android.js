@@ -11,6 +11,24 @@ var _notifHandlers = new Map();
 var DEVICE_NOTIF_EVENT = 'remoteNotificationReceived';
 var NOTIF_REGISTER_EVENT = 'remoteNotificationsRegistered';
 var REMOTE_FETCH_EVENT = 'remoteFetch';
+var BATCH_EVENT = 'remoteNotificationsBatch';
+
+// Events queued natively while the React instance was not active are replayed in one batch,
+// re-emit them one by one so they reach the regular listeners
+DeviceEventEmitter.addListener(BATCH_EVENT, function(batch) {
+	batch.forEach(function(event) {
+		DeviceEventEmitter.emit(event.eventName, event.params);
+	});
+});
+
+// Events carry the notification as a native map under `data` when native_map_delivery is
+// enabled, or as the legacy JSON string under `dataJSON`
+var parseNotificationData = function(notifData) {
+	if (notifData.dataJSON !== undefined) {
+		return JSON.parse(notifData.dataJSON);
+	}
+	return notifData.data;
+};
 
 var NotificationsComponent = function() {
 
@@ -19,8 +37,8 @@ var NotificationsComponent = function() {
 NotificationsComponent.prototype.getInitialNotification = function () {
     return RNPushNotification.getInitialNotification()
         .then(function (notification) {
-            if (notification && notification.dataJSON) {
-                return JSON.parse(notification.dataJSON);
+            if (notification && (notification.dataJSON || notification.data)) {
+                return parseNotificationData(notification);
             }
             return null;
         });
@@ -75,7 +93,7 @@ NotificationsComponent.prototype.addEventListener = function(type: string, handl
 		listener =  DeviceEventEmitter.addListener(
 			DEVICE_NOTIF_EVENT,
 			function(notifData) {
-				var data = JSON.parse(notifData.dataJSON);
+				var data = parseNotificationData(notifData);
 				handler(data);
 			}
 		);
@@ -90,7 +108,7 @@ NotificationsComponent.prototype.addEventListener = function(type: string, handl
 		listener = DeviceEventEmitter.addListener(
 			REMOTE_FETCH_EVENT,
 			function(notifData) {
-				var notificationData = JSON.parse(notifData.dataJSON)
+				var notificationData = parseNotificationData(notifData);
 				handler(notificationData);
 			}
 		);
@@ -108,10 +126,25 @@ NotificationsComponent.prototype.removeEventListener = function(type: string, ha
 	_notifHandlers.delete(type);
 }
 
+NotificationsComponent.prototype.replayPendingEvents = function() {
+	if (!RNPushNotification.replayPendingEvents) {
+		return;
+	}
+	RNPushNotification.replayPendingEvents();
+}
+
 NotificationsComponent.prototype.registerNotificationActions = function(details: Object) {
 	RNPushNotification.registerNotificationActions(details);
 }
 
+NotificationsComponent.prototype.createNotificationChannel = function(channel: Object) {
+	RNPushNotification.createNotificationChannel(channel);
+}
+
+NotificationsComponent.prototype.getPipelineMetrics = function() {
+	return RNPushNotification.getPipelineMetrics();
+}
+
 NotificationsComponent.prototype.clearAllNotifications = function() {
 	RNPushNotification.clearAllNotifications()
 }
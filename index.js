@@ -84,6 +84,7 @@ Notifications.configure = function(options: Object) {
 		this.callNative( 'addEventListener', [ 'notification', this._onNotification ] );
 		this.callNative( 'addEventListener', [ 'localNotification', this._onNotification ] );
 		Platform.OS === 'android' ? this.callNative( 'addEventListener', [ 'remoteFetch', this._onRemoteFetch ] ) : null
+		Platform.OS === 'android' ? this.callNative( 'replayPendingEvents', [] ) : null
 
 		this.isLoaded = true;
 	}
@@ -331,4 +332,14 @@ Notifications.clearAllNotifications = function() {
 	return this.callNative('clearAllNotifications', arguments)
 }
 
+Notifications.createNotificationChannel = function() {
+	// Only available for Android
+	return this.callNative('createNotificationChannel', arguments)
+}
+
+Notifications.getPipelineMetrics = function() {
+	// Only available for Android
+	return this.callNative('getPipelineMetrics', arguments)
+}
+
 module.exports = Notifications;